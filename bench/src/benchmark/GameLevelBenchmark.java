@@ -0,0 +1,115 @@
+package benchmark;
+
+import model.Exceptions.InvalidMapException;
+import model.GameLevel;
+import model.MapParser;
+import model.Map.Push;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the {@link GameLevel} calls made on every key press, and of loading a level, on every bundled
+ * level. Levels are parsed with {@link MapParser} and their deadlock patterns computed in memory, so nothing is
+ * written next to the map files and every load pays for parsing and the pattern search.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GameLevelBenchmark {
+    private static final char[] MOVES = {'w', 'a', 's', 'd'};
+
+    @Param({"01-easy.txt", "02-easy.txt", "03-easy.txt", "04-easy.txt", "05-normal.txt", "06-normal.txt",
+            "07-normal.txt", "08-normal.txt", "09-hard.txt", "10-hard.txt", "11-hard.txt", "12-hard.txt",
+            "13-extreme.txt", "14-impossible.txt"})
+    public String level;
+
+    private ByteBuffer data;
+    private GameLevel gameLevel;
+    private int turn;
+
+    @Setup
+    public void setUp() throws InvalidMapException {
+        data = MapParser.read(Levels.path(level));
+        gameLevel = new GameLevel();
+        gameLevel.loadMap(MapParser.parse(data));
+    }
+
+    /**
+     * Makes a move in each direction in turn and undoes it, so that every invocation starts from the initial
+     * state
+     */
+    @Benchmark
+    public boolean makeMove() {
+        boolean moved = gameLevel.makeMove(MOVES[turn++ & 3]);
+        if (moved)
+            gameLevel.undo();
+        return moved;
+    }
+
+    @Benchmark
+    public boolean isWin() {
+        return gameLevel.isWin();
+    }
+
+    @Benchmark
+    public boolean isDeadlocked(Pushed pushed) {
+        return pushed.gameLevel.isDeadlocked();
+    }
+
+    /**
+     * Parses the bytes of the map file, read once in the setup, and computes the deadlock patterns of the level
+     */
+    @Benchmark
+    public GameLevel loadMap() throws InvalidMapException {
+        GameLevel g = new GameLevel();
+        g.loadMap(MapParser.parse(data));
+        return g;
+    }
+
+    /**
+     * A level in which one of the pushes possible from the initial state, in turn, is made before every invocation,
+     * so that {@link #isDeadlocked(Pushed)} runs on a state a crate has just moved in, as it does after a key
+     * press, rather than returning a cached result. Making and taking back the push is not timed.
+     */
+    @State(Scope.Thread)
+    public static class Pushed {
+        private GameLevel gameLevel;
+        private List<Push> pushes;
+        private int turn;
+
+        @Setup
+        public void setUp(GameLevelBenchmark benchmark) throws InvalidMapException {
+            gameLevel = new GameLevel();
+            gameLevel.loadMap(MapParser.parse(benchmark.data));
+            pushes = gameLevel.getMap().getLegalPushes();
+        }
+
+        @Setup(Level.Invocation)
+        public void push() {
+            gameLevel.makePush(pushes.get(turn++ % pushes.size()));
+        }
+
+        @TearDown(Level.Invocation)
+        public void restart() {
+            gameLevel.restart();
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Locates and reads the bundled levels for the benchmarks
+ */
+final class Levels {
+    /**
+     * The map directory, relative to the repository root unless overridden with -Dsokoban.maps=...
+     */
+    static final String DIRECTORY = System.getProperty("sokoban.maps", "src/assets/maps");
+
+    private Levels() {
+    }
+
+    static Path path(String level) {
+        return Paths.get(DIRECTORY, level);
+    }
+
+    /**
+     * Reads a map file in the same format as {@link model.GameLevel#loadMap(String)}: the number of rows, the
+     * number of columns, then one line per row
+     *
+     * @return The rows of the map
+     */
+    static char[][] read(String level) throws IOException {
+        List<String> lines = Files.readAllLines(path(level));
+        int rows = Integer.parseInt(lines.get(0).trim());
+        int cols = Integer.parseInt(lines.get(1).trim());
+        char[][] rep = new char[rows][cols];
+        for (int r = 0; r < rows; r++) {
+            lines.get(r + 2).getChars(0, cols, rep[r], 0);
+        }
+        return rep;
+    }
+}
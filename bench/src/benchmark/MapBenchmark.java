@@ -0,0 +1,67 @@
+package benchmark;
+
+import model.Exceptions.InvalidMapException;
+import model.Map.Map;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of {@link Map} on every bundled level
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MapBenchmark {
+    private static final Map.Direction[] DIRECTIONS = Map.Direction.values();
+
+    @Param({"01-easy.txt", "02-easy.txt", "03-easy.txt", "04-easy.txt", "05-normal.txt", "06-normal.txt",
+            "07-normal.txt", "08-normal.txt", "09-hard.txt", "10-hard.txt", "11-hard.txt", "12-hard.txt",
+            "13-extreme.txt", "14-impossible.txt"})
+    public String level;
+
+    private char[][] rep;
+    private Map map;
+    private int turn;
+
+    @Setup
+    public void setUp() throws IOException, InvalidMapException {
+        rep = Levels.read(level);
+        map = new Map();
+        map.initialize(rep.length, rep[0].length, rep);
+    }
+
+    @Benchmark
+    public Map initialize() throws InvalidMapException {
+        Map m = new Map();
+        m.initialize(rep.length, rep[0].length, rep);
+        return m;
+    }
+
+    /**
+     * Moves the player in each direction in turn and takes the move back, so that every invocation starts from
+     * the initial state. Moves into walls count as well, as they do on key presses.
+     */
+    @Benchmark
+    public boolean movePlayer() {
+        Map.Direction d = DIRECTIONS[turn++ & 3];
+        boolean moved = map.movePlayer(d);
+        if (moved)
+            map.undoMove(d, map.lastMovePushed());
+        return moved;
+    }
+}
@@ -0,0 +1,228 @@
+package benchmark;
+
+import model.Exceptions.InvalidMapException;
+import model.MapParser;
+import model.Map.Map;
+import model.solver.BidirectionalSolver;
+import model.solver.ParallelSolver;
+import model.solver.Solver;
+import model.solver.SolverResult;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Solves every bundled level with a fixed budget and records wall time, nodes expanded, nodes per second, peak
+ * heap and solution length. The results are written as CSV and JSON, and can be compared against a baseline CSV
+ * written by an earlier run; the exit code is 1 if any level regressed beyond the threshold.
+ * <p>
+ * Usage: SolverBenchmark [options]
+ * <ul>
+ * <li>--solver astar|parallel|bidirectional (default astar)</li>
+ * <li>--threads N: the worker threads of the parallel solver (default all cores)</li>
+ * <li>--nodes N, --time MS: the budget of every solve (default 2000000 nodes, 60000 ms)</li>
+ * <li>--runs N: solves per level; the median time is reported (default 3)</li>
+ * <li>--out FILE: where to write the results; FILE.json is written next to it (default solver-bench.csv)</li>
+ * <li>--baseline FILE: a CSV of an earlier run to compare against, e.g. bench/solver-baseline.csv</li>
+ * <li>--threshold F: the allowed relative increase of time, nodes and memory (default 0.25)</li>
+ * </ul>
+ */
+public class SolverBenchmark {
+    private static final String HEADER = "level,status,pushes,moves,nodes,time_ms,nodes_per_sec,peak_heap_mb";
+    //timings below this many milliseconds are noise, and never count as a regression
+    private static final long MIN_TIME_MS = 50;
+    //likewise for heap peaks, which include whatever the JVM itself holds
+    private static final double MIN_HEAP_MB = 16;
+
+    public static void main(String[] args) throws IOException, InvalidMapException {
+        HashMap<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            options.put(args[i], args[i + 1]);
+        }
+        String solverName = options.getOrDefault("--solver", "astar");
+        long nodeLimit = Long.parseLong(options.getOrDefault("--nodes", "" + Solver.DEFAULT_NODE_LIMIT));
+        long timeLimit = Long.parseLong(options.getOrDefault("--time", "" + Solver.DEFAULT_TIME_LIMIT));
+        int threads = Integer.parseInt(options.getOrDefault("--threads",
+                "" + Runtime.getRuntime().availableProcessors()));
+        int runs = Integer.parseInt(options.getOrDefault("--runs", "3"));
+        double threshold = Double.parseDouble(options.getOrDefault("--threshold", "0.25"));
+        Path out = Paths.get(options.getOrDefault("--out", "solver-bench.csv"));
+
+        List<Row> rows = new ArrayList<>();
+        for (String level : levels()) {
+            Row row = run(level, solverName, threads, nodeLimit, timeLimit, runs);
+            System.out.println(row.toCsv());
+            rows.add(row);
+        }
+        write(out, rows);
+
+        String baseline = options.get("--baseline");
+        if (baseline != null && regressions(read(Paths.get(baseline)), rows, threshold) > 0)
+            System.exit(1);
+    }
+
+    private static List<String> levels() throws IOException {
+        try (Stream<Path> files = Files.list(Paths.get(Levels.DIRECTORY))) {
+            return files.map(p -> p.getFileName().toString())
+                    .filter(name -> name.endsWith(".txt"))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static Solver newSolver(String name, int threads) {
+        switch (name) {
+            case "astar":
+                return new Solver();
+            case "parallel":
+                ParallelSolver parallel = new ParallelSolver();
+                parallel.setParallelism(threads);
+                return parallel;
+            case "bidirectional":
+                return new BidirectionalSolver();
+            default:
+                throw new IllegalArgumentException("Unknown solver " + name);
+        }
+    }
+
+    /**
+     * Solves the level the given number of times, each time with a fresh solver and a freshly parsed level. Levels
+     * are parsed with {@link MapParser} rather than loaded into a game level, so no deadlock pattern cache is
+     * written next to the map files.
+     */
+    private static Row run(String level, String solverName, int threads, long nodeLimit, long timeLimit,
+                           int runs) throws InvalidMapException {
+        List<MemoryPoolMXBean> heap = ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP)
+                .collect(Collectors.toList());
+        long[] times = new long[runs];
+        long peak = 0;
+        SolverResult result = null;
+        for (int i = 0; i < runs; i++) {
+            Map map = MapParser.parse(Levels.path(level));
+            Solver solver = newSolver(solverName, threads);
+            solver.setNodeLimit(nodeLimit);
+            solver.setTimeLimit(timeLimit);
+
+            System.gc();
+            heap.forEach(MemoryPoolMXBean::resetPeakUsage);
+            long start = System.nanoTime();
+            result = solver.solve(map);
+            times[i] = (System.nanoTime() - start) / 1_000_000;
+            peak = Math.max(peak, heap.stream().mapToLong(pool -> pool.getPeakUsage().getUsed()).sum());
+        }
+        Arrays.sort(times);
+        long time = times[runs / 2];
+        return new Row(level, result.getStatus().toString(), result.getPushes(), result.getMoves(),
+                result.getNodesExpanded(), time, result.getNodesExpanded() * 1000 / Math.max(time, 1),
+                peak / (1024.0 * 1024.0));
+    }
+
+    private static void write(Path csv, List<Row> rows) throws IOException {
+        try (PrintWriter w = new PrintWriter(Files.newBufferedWriter(csv))) {
+            w.println(HEADER);
+            rows.forEach(row -> w.println(row.toCsv()));
+        }
+        Path json = csv.resolveSibling(csv.getFileName() + ".json");
+        try (PrintWriter w = new PrintWriter(Files.newBufferedWriter(json))) {
+            w.println("[");
+            for (int i = 0; i < rows.size(); i++) {
+                w.println("  " + rows.get(i).toJson() + (i + 1 < rows.size() ? "," : ""));
+            }
+            w.println("]");
+        }
+    }
+
+    private static HashMap<String, Row> read(Path csv) throws IOException {
+        HashMap<String, Row> rows = new HashMap<>();
+        for (String line : Files.readAllLines(csv)) {
+            if (line.isEmpty() || line.equals(HEADER))
+                continue;
+            String[] f = line.split(",");
+            rows.put(f[0], new Row(f[0], f[1], Integer.parseInt(f[2]), Integer.parseInt(f[3]), Long.parseLong(f[4]),
+                    Long.parseLong(f[5]), Long.parseLong(f[6]), Double.parseDouble(f[7])));
+        }
+        return rows;
+    }
+
+    /**
+     * Prints every metric which got worse than the baseline by more than the threshold. Solution length and status
+     * have no tolerance, since the search is deterministic.
+     *
+     * @return The number of regressions
+     */
+    private static int regressions(HashMap<String, Row> baseline, List<Row> rows, double threshold) {
+        int count = 0;
+        for (Row row : rows) {
+            Row base = baseline.get(row.level);
+            if (base == null)
+                continue;
+            List<String> problems = new ArrayList<>();
+            if (base.status.equals("SOLVED") && !row.status.equals("SOLVED"))
+                problems.add("status " + base.status + " -> " + row.status);
+            if (row.status.equals("SOLVED") && base.status.equals("SOLVED") && row.moves > base.moves)
+                problems.add("moves " + base.moves + " -> " + row.moves);
+            if (row.status.equals("SOLVED") && base.status.equals("SOLVED") && row.pushes > base.pushes)
+                problems.add("pushes " + base.pushes + " -> " + row.pushes);
+            if (row.nodes > base.nodes * (1 + threshold))
+                problems.add("nodes " + base.nodes + " -> " + row.nodes);
+            if (row.timeMillis > MIN_TIME_MS && row.timeMillis > base.timeMillis * (1 + threshold))
+                problems.add("time " + base.timeMillis + "ms -> " + row.timeMillis + "ms");
+            if (row.peakHeapMb > MIN_HEAP_MB && row.peakHeapMb > base.peakHeapMb * (1 + threshold))
+                problems.add(String.format(Locale.ROOT, "peak heap %.1fMB -> %.1fMB", base.peakHeapMb,
+                        row.peakHeapMb));
+            if (!problems.isEmpty()) {
+                System.err.println("REGRESSION " + row.level + ": " + String.join(", ", problems));
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static final class Row {
+        final String level;
+        final String status;
+        final int pushes;
+        final int moves;
+        final long nodes;
+        final long timeMillis;
+        final long nodesPerSecond;
+        final double peakHeapMb;
+
+        Row(String level, String status, int pushes, int moves, long nodes, long timeMillis, long nodesPerSecond,
+            double peakHeapMb) {
+            this.level = level;
+            this.status = status;
+            this.pushes = pushes;
+            this.moves = moves;
+            this.nodes = nodes;
+            this.timeMillis = timeMillis;
+            this.nodesPerSecond = nodesPerSecond;
+            this.peakHeapMb = peakHeapMb;
+        }
+
+        String toCsv() {
+            return String.format(Locale.ROOT, "%s,%s,%d,%d,%d,%d,%d,%.1f", level, status, pushes, moves, nodes,
+                    timeMillis, nodesPerSecond, peakHeapMb);
+        }
+
+        String toJson() {
+            return String.format(Locale.ROOT, "{\"level\": \"%s\", \"status\": \"%s\", \"pushes\": %d, \"moves\": %d, "
+                            + "\"nodes\": %d, \"time_ms\": %d, \"nodes_per_sec\": %d, \"peak_heap_mb\": %.1f}",
+                    level, status, pushes, moves, nodes, timeMillis, nodesPerSecond, peakHeapMb);
+        }
+    }
+}
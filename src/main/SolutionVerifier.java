@@ -0,0 +1,161 @@
+package main;
+
+import model.Exceptions.InvalidMapException;
+import model.Exceptions.UnreadableMapException;
+import model.MapParser;
+import model.Map.Map;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Verifies solutions in bulk without starting JavaFX: every solution is replayed on a {@link Map} of its level,
+ * spread over all cores.
+ * <p>
+ * Usage: SolutionVerifier mapDirectory solutionFile [outputFile] [threads]
+ * <p>
+ * Every non-empty line of the solution file not starting with # is a level filename inside the map directory,
+ * followed by whitespace and the solution in LURD notation. A solution in wasd notation is marked by the word
+ * wasd between the two, e.g. "01-easy.txt wasd ddsa", since d means down in LURD and right in wasd.
+ * <p>
+ * One CSV line per solution is written to the output file, or to standard output: the line number, level, PASS or
+ * FAIL, the number of moves and pushes replayed, and why a failed solution failed. An entry which cannot be
+ * verified at all, e.g. because its level name is not a valid path, fails on its own row without stopping the
+ * others. The exit code is 0 if all solutions pass, 1 otherwise.
+ */
+public class SolutionVerifier {
+
+    public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+        if (args.length < 2) {
+            System.err.println("Usage: SolutionVerifier mapDirectory solutionFile [outputFile] [threads]");
+            System.exit(2);
+        }
+        Path mapDirectory = Paths.get(args[0]);
+        List<String> lines = Files.readAllLines(Paths.get(args[1]));
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+
+        List<Integer> entries = IntStream.range(0, lines.size())
+                .filter(i -> !lines.get(i).trim().isEmpty() && !lines.get(i).startsWith("#"))
+                .boxed()
+                .collect(Collectors.toList());
+        //the bytes of every level, read once and parsed by every solution of the level
+        ConcurrentHashMap<String, ByteBuffer> levels = new ConcurrentHashMap<>();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        List<Result> results;
+        try {
+            results = pool.submit(() -> entries.parallelStream()
+                    .map(i -> verifyEntry(i + 1, mapDirectory, levels, lines.get(i).trim()))
+                    .collect(Collectors.toList())).get();
+        } finally {
+            pool.shutdown();
+        }
+
+        boolean allPassed = true;
+        try (PrintStream out = args.length > 2 ? new PrintStream(args[2]) : null) {
+            PrintStream target = out == null ? System.out : out;
+            target.println("line,level,result,moves,pushes,reason");
+            for (Result result : results) {
+                target.println(result.toCsv());
+                allPassed &= result.passed;
+            }
+        }
+        System.exit(allPassed ? 0 : 1);
+    }
+
+    /**
+     * Verifies an entry, turning any unexpected exception into a failed result
+     */
+    private static Result verifyEntry(int line, Path mapDirectory, ConcurrentHashMap<String, ByteBuffer> levels,
+                                      String entry) {
+        try {
+            return verify(line, mapDirectory, levels, entry);
+        } catch (RuntimeException e) {
+            return new Result(line, entry.split("\\s+", 2)[0], false, 0, 0, "cannot verify: " + e);
+        }
+    }
+
+    /**
+     * @param line  The line number of the entry in the solution file
+     * @param entry A line of the solution file: the level filename and the solution
+     * @return The result of replaying the solution
+     */
+    private static Result verify(int line, Path mapDirectory, ConcurrentHashMap<String, ByteBuffer> levels,
+                                 String entry) {
+        String[] parts = entry.split("\\s+", 3);
+        String levelName = parts[0];
+        boolean wasd = parts.length > 2 && parts[1].equalsIgnoreCase("wasd");
+        if (parts.length > 2 && !wasd && !parts[1].equalsIgnoreCase("lurd"))
+            return new Result(line, levelName, false, 0, 0, "unknown notation " + parts[1]);
+        String solution = parts.length > 2 ? parts[2].trim() : parts.length > 1 ? parts[1].trim() : "";
+
+        Map map;
+        try {
+            ByteBuffer data = levels.get(levelName);
+            if (data == null) {
+                data = MapParser.read(mapDirectory.resolve(levelName));
+                levels.putIfAbsent(levelName, data);
+            }
+            map = MapParser.parse(data);
+        } catch (UnreadableMapException e) {
+            return new Result(line, levelName, false, 0, 0, "cannot read level: " + e.getCause());
+        } catch (InvalidMapException e) {
+            return new Result(line, levelName, false, 0, 0, "invalid level: " + e.getMessage());
+        }
+
+        int pushes = 0;
+        for (int i = 0; i < solution.length(); i++) {
+            Map.Direction d = Map.Direction.fromMove(solution.charAt(i), wasd);
+            if (d == null || !map.movePlayer(d))
+                return new Result(line, levelName, false, i, pushes,
+                        "illegal move " + solution.charAt(i) + " at " + i);
+            if (map.lastMovePushed())
+                pushes++;
+        }
+        if (!map.isSolved())
+            return new Result(line, levelName, false, solution.length(), pushes, "level not solved");
+        return new Result(line, levelName, true, solution.length(), pushes, "");
+    }
+
+    /**
+     * @return The field, in double quotes with its double quotes doubled if it holds a comma, quote or line break
+     */
+    private static String csvField(String field) {
+        if (field.indexOf(',') == -1 && field.indexOf('"') == -1 && field.indexOf('\n') == -1
+                && field.indexOf('\r') == -1)
+            return field;
+        return '"' + field.replace("\"", "\"\"") + '"';
+    }
+
+    private static final class Result {
+        final int line;
+        final String level;
+        final boolean passed;
+        final int moves;
+        final int pushes;
+        final String reason;
+
+        Result(int line, String level, boolean passed, int moves, int pushes, String reason) {
+            this.line = line;
+            this.level = level;
+            this.passed = passed;
+            this.moves = moves;
+            this.pushes = pushes;
+            this.reason = reason;
+        }
+
+        String toCsv() {
+            return line + "," + csvField(level) + "," + (passed ? "PASS" : "FAIL") + "," + moves + "," + pushes + ","
+                    + csvField(reason);
+        }
+    }
+}
@@ -11,4 +11,12 @@ public abstract class InvalidMapException extends Exception {
     InvalidMapException(String s) {
         super(s);
     }
+
+    /**
+     * @param s     The exception message
+     * @param cause The exception which caused this one
+     */
+    InvalidMapException(String s, Throwable cause) {
+        super(s, cause);
+    }
 }
@@ -0,0 +1,28 @@
+package model.Exceptions;
+
+/**
+ * Thrown when the map file does not follow the map format, e.g. a row is shorter than the number of columns
+ */
+public class MapFormatException extends InvalidMapException {
+    private final int line;
+    private final int column;
+
+    /**
+     * @param s      The exception message
+     * @param line   The line of the map file where the problem is, starting at 1
+     * @param column The column of the map file where the problem is, starting at 1
+     */
+    public MapFormatException(String s, int line, int column) {
+        super(s + " (line " + line + ", column " + column + ")");
+        this.line = line;
+        this.column = column;
+    }
+
+    public int getLine() {
+        return line;
+    }
+
+    public int getColumn() {
+        return column;
+    }
+}
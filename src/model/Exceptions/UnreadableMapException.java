@@ -0,0 +1,16 @@
+package model.Exceptions;
+
+import java.io.IOException;
+
+/**
+ * Thrown when the map file cannot be read, e.g. because it does not exist
+ */
+public class UnreadableMapException extends InvalidMapException {
+    /**
+     * @param s     The exception message
+     * @param cause The exception raised while reading
+     */
+    public UnreadableMapException(String s, IOException cause) {
+        super(s, cause);
+    }
+}
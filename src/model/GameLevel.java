@@ -3,13 +3,16 @@ package model;
 import javafx.beans.property.IntegerProperty;
 import javafx.beans.property.SimpleIntegerProperty;
 import model.Exceptions.InvalidMapException;
+import model.Map.DeadlockPatterns;
 import model.Map.Map;
-import model.Map.Occupant.Crate;
-import model.Map.Occupiable.DestTile;
+import model.Map.Push;
 
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.util.Scanner;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * A class that loads, stores, modifies, and keeps track of the game map win/deadlock condition. Also keeps tracks
@@ -17,67 +20,106 @@ import java.util.Scanner;
  */
 public class GameLevel {
 
+    private static final Map.Direction[] DIRECTIONS = Map.Direction.values();
+    //bits 0-1 of a journal entry hold the direction ordinal, bit 2 whether the move pushed a crate
+    private static final byte PUSH_FLAG = 4;
+
     private final IntegerProperty numPushes = new SimpleIntegerProperty(0);
+    private final IntegerProperty numGoals = new SimpleIntegerProperty(0);
+    private final IntegerProperty numGoalsFilled = new SimpleIntegerProperty(0);
     private Map map;
 
+    //one byte per move; entries in [journalPos, journalSize) are the moves that can be redone
+    private byte[] journal = new byte[64];
+    private int journalPos;
+    private int journalSize;
+
     public IntegerProperty numPushesProperty() {
         return numPushes;
     }
 
+    /**
+     * @return The number of destinations of the current map
+     */
+    public IntegerProperty numGoalsProperty() {
+        return numGoals;
+    }
+
+    /**
+     * @return The number of destinations with a crate on them, updated after every move
+     */
+    public IntegerProperty numGoalsFilledProperty() {
+        return numGoalsFilled;
+    }
+
     public Map getMap() {
         return map;
     }
 
     /**
-     * Loads and reads the map line by line, instantiates and initializes map
+     * Loads the map with a {@link MapParser}, and attaches the deadlock patterns of the level to it
      *
      * @param filename the map text filename
-     * @throws InvalidMapException when the map is invalid
+     * @throws InvalidMapException when the map cannot be read or is invalid
      */
     public void loadMap(String filename) throws InvalidMapException {
-        File f = new File(filename);
-        try (Scanner reader = new Scanner(f)) {
-            int numRows = reader.nextInt();
-            int numCols = reader.nextInt();
-            reader.nextLine();
-
-            char[][] rep = new char[numRows][numCols];
-            for (int r = 0; r < numRows; r++) {
-                String row = reader.nextLine();
-                for (int c = 0; c < numCols; c++) {
-                    rep[r][c] = row.charAt(c);
-                }
-            }
+        Path file = Paths.get(filename);
+        map = MapParser.parse(file);
+        map.setDeadlockPatterns(DeadlockPatterns.forLevel(file, map));
+        startLevel();
+    }
 
-            map = new Map();
-            map.initialize(numRows, numCols, rep);
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
-        }
+    /**
+     * Loads a level of a collection file. Its deadlock patterns are computed in memory, as a collection can hold
+     * too many levels to cache them all next to it.
+     *
+     * @param collection The indexed collection
+     * @param index      The index of the level in the collection
+     * @throws InvalidMapException when the level cannot be read or is invalid
+     */
+    public void loadMap(LevelCollection collection, int index) throws InvalidMapException {
+        loadMap(collection.load(index));
+    }
+
+    /**
+     * Starts a level from a map already initialized, e.g. by {@link MapParser}. Its deadlock patterns are computed
+     * in memory, nothing is read from or written to the disk.
+     *
+     * @param map The initialized map, which the level then modifies
+     */
+    public void loadMap(Map map) {
+        this.map = map;
+        map.setDeadlockPatterns(DeadlockPatterns.compute(map));
+        startLevel();
+    }
+
+    private void startLevel() {
+        journalPos = 0;
+        journalSize = 0;
+        numGoals.set(map.getNumDests());
+        numGoalsFilled.set(map.getNumFilledDests());
     }
 
     /**
-     * @return Whether or not the win condition has been satisfied
+     * @return Whether or not the win condition has been satisfied, i.e. every destination has a crate on it. The map
+     * counts the filled destinations on every push, so this is O(1).
      */
     public boolean isWin() {
-        return map.getDestTiles().stream().allMatch(DestTile::isCompleted);
+        return map.isSolved();
     }
 
     /**
-     * When no crates can be moved but the game is not won, then deadlock has occurred
+     * Deadlock has occurred when a crate stands on a square from which it can never reach a destination, when
+     * crates are frozen in place and not all of them are on destinations, when two crates match a deadlock pattern
+     * of the level, or when crates fence off an area which can never be opened nor solved. The first three are
+     * kept up to date by the map on every push, so reading them is O(1): dead crates and frozen crates cost O(1)
+     * per push, the deadlock pairs O(crates) per push, since the pushed crate is paired with every other one. The
+     * corral search only runs when they find nothing and a crate has moved since it last ran.
      *
      * @return Whether deadlock has occurred
      */
     public boolean isDeadlocked() {
-        for (Crate c : map.getCrates()) {
-            boolean canMoveLR = map.isOccupiableAndNotOccupiedWithCrate(c.getR(), c.getC() - 1)
-                    && map.isOccupiableAndNotOccupiedWithCrate(c.getR(), c.getC() + 1);
-            boolean canMoveUD = map.isOccupiableAndNotOccupiedWithCrate(c.getR() - 1, c.getC()) &&
-                    map.isOccupiableAndNotOccupiedWithCrate(c.getR() + 1, c.getC());
-            if (canMoveLR || canMoveUD)
-                return false;
-        }
-        return true;
+        return map.hasDeadCrate() || map.hasFreezeDeadlock() || map.hasPatternDeadlock() || map.hasCorralDeadlock();
     }
 
     /**
@@ -89,24 +131,222 @@ public class GameLevel {
      * @return Whether or not the move was successful
      */
     public boolean makeMove(char c) {
-        boolean madeMove = false;
-        switch (c) {
-            case 'w':
-                madeMove = map.movePlayer(Map.Direction.UP);
-                break;
-            case 'a':
-                madeMove = map.movePlayer(Map.Direction.LEFT);
-                break;
-            case 's':
-                madeMove = map.movePlayer(Map.Direction.DOWN);
-                break;
-            case 'd':
-                madeMove = map.movePlayer(Map.Direction.RIGHT);
-                break;
+        Map.Direction d = Map.Direction.fromMove(c, true);
+        return d != null && makeMove(d);
+    }
+
+    /**
+     * @param d The direction to move the player in
+     * @return Whether or not the move was successful
+     */
+    public boolean makeMove(Map.Direction d) {
+        if (!step(d)) {
+            return false;
+        }
+        numPushes.setValue(numPushes.getValue() + 1);
+        numGoalsFilled.set(map.getNumFilledDests());
+        return true;
+    }
+
+    /**
+     * Walks the player to the back of the crate and pushes it, journaling every step so the push can be undone
+     * move by move. Listeners are notified once, after the push.
+     * <p>
+     * The whole walk and the push are checked before anything moves, so if the push cannot be made the level is
+     * left unchanged.
+     *
+     * @param push A push returned by {@link Map#getLegalPushes()} for the current state
+     * @return Whether or not the push was made
+     */
+    public boolean makePush(Push push) {
+        ArrayList<Map.Direction> path = map.pathTo(push.getPlayerPos());
+        if (path == null || !canPush(push)) {
+            return false;
+        }
+        path.add(push.getDirection());
+        for (Map.Direction d : path) {
+            step(d);
+        }
+        notifyMoves(path.size());
+        return true;
+    }
+
+    /**
+     * @return Whether the crate of the push is next to the player position of the push, and the square behind it
+     * is free. The walk to the player position is over free squares, since {@link Map#pathTo(int)} only goes
+     * through squares the player can reach without pushing.
+     */
+    private boolean canPush(Push push) {
+        Map.Direction d = push.getDirection();
+        int cols = map.getCols();
+        int crateR = push.getPlayerPos() / cols + d.getDR();
+        int crateC = push.getPlayerPos() % cols + d.getDC();
+        if (crateR < 0 || crateR >= map.getRows() || crateC < 0 || crateC >= cols
+                || map.index(crateR, crateC) != push.getCratePos() || !map.hasCrate(push.getCratePos())) {
+            return false;
+        }
+        return map.isOccupiableAndNotOccupiedWithCrate(crateR + d.getDR(), crateC + d.getDC());
+    }
+
+    /**
+     * Makes a sequence of moves in a tight loop, e.g. to replay a solution. The notation has to be given, since
+     * d means down in LURD notation and right in wasd notation.
+     * <p>
+     * Every move is journaled as if made with {@link #makeMove(char)}, but listeners of the properties are only
+     * notified once, at the end.
+     *
+     * @param moves The moves to make
+     * @param wasd  Whether the moves are in wasd notation instead of LURD notation (see
+     *              {@link Map.Direction#fromMove(char, boolean)})
+     * @return The index of the first move that is not a valid move character or cannot be made, or -1 if all moves
+     * were made. Moves before that index have been made; the rest are skipped.
+     */
+    public int applyMoves(CharSequence moves, boolean wasd) {
+        int length = moves.length();
+        for (int i = 0; i < length; i++) {
+            Map.Direction d = Map.Direction.fromMove(moves.charAt(i), wasd);
+            if (d == null || !step(d)) {
+                notifyMoves(i);
+                return i;
+            }
         }
-        if (madeMove) {
-            numPushes.setValue(numPushes.getValue() + 1);
+        notifyMoves(length);
+        return -1;
+    }
+
+    /**
+     * @param moves The moves to make, see {@link #applyMoves(CharSequence, boolean)}
+     * @param wasd  Whether the moves are in wasd notation instead of LURD notation
+     * @return The index of the first move that could not be made, or -1 if all moves were made
+     */
+    public int applyMoves(char[] moves, boolean wasd) {
+        return applyMoves(CharBuffer.wrap(moves), wasd);
+    }
+
+    /**
+     * @param moves The moves to make as ASCII bytes, from the position to the limit of the buffer, see
+     *              {@link #applyMoves(CharSequence, boolean)}. The position of the buffer is not changed.
+     * @param wasd  Whether the moves are in wasd notation instead of LURD notation
+     * @return The index of the first move that could not be made, relative to the position of the buffer, or -1
+     * if all moves were made
+     */
+    public int applyMoves(ByteBuffer moves, boolean wasd) {
+        return applyMoves(new AsciiSequence(moves), wasd);
+    }
+
+    /**
+     * Moves the player and journals the move, without notifying any listeners
+     *
+     * @return Whether or not the move was successful
+     */
+    private boolean step(Map.Direction d) {
+        if (!map.movePlayer(d)) {
+            return false;
+        }
+        record(d, map.lastMovePushed());
+        return true;
+    }
+
+    /**
+     * Updates the properties once after a number of moves were made with {@link #step(Map.Direction)}
+     */
+    private void notifyMoves(int count) {
+        if (count == 0)
+            return;
+        numPushes.setValue(numPushes.getValue() + count);
+        numGoalsFilled.set(map.getNumFilledDests());
+    }
+
+    /**
+     * Appends a move to the journal, discarding the moves which could have been redone
+     *
+     * @param d      The direction of the move
+     * @param pushed Whether the move pushed a crate
+     */
+    private void record(Map.Direction d, boolean pushed) {
+        if (journalPos == journal.length) {
+            journal = Arrays.copyOf(journal, journal.length * 2);
+        }
+        journal[journalPos++] = (byte) (d.ordinal() | (pushed ? PUSH_FLAG : 0));
+        journalSize = journalPos;
+    }
+
+    /**
+     * Reverts the last move made, without reloading the map
+     *
+     * @return Whether there was a move to undo
+     */
+    public boolean undo() {
+        if (journalPos == 0) {
+            return false;
+        }
+        undoEntry(journal[--journalPos]);
+        numPushes.setValue(numPushes.getValue() - 1);
+        numGoalsFilled.set(map.getNumFilledDests());
+        return true;
+    }
+
+    /**
+     * Makes the last undone move again
+     *
+     * @return Whether there was a move to redo
+     */
+    public boolean redo() {
+        if (journalPos == journalSize) {
+            return false;
+        }
+        map.movePlayer(DIRECTIONS[journal[journalPos++] & 3]);
+        numPushes.setValue(numPushes.getValue() + 1);
+        numGoalsFilled.set(map.getNumFilledDests());
+        return true;
+    }
+
+    /**
+     * Rewinds the map to its initial state in memory. The rewound moves can still be redone.
+     */
+    public void restart() {
+        while (journalPos > 0) {
+            undoEntry(journal[--journalPos]);
+        }
+        numPushes.set(0);
+        numGoalsFilled.set(map.getNumFilledDests());
+    }
+
+    private void undoEntry(byte entry) {
+        map.undoMove(DIRECTIONS[entry & 3], (entry & PUSH_FLAG) != 0);
+    }
+
+    /**
+     * The ASCII bytes from the position to the limit of a buffer as chars, read in place with absolute gets
+     */
+    private static final class AsciiSequence implements CharSequence {
+        private final ByteBuffer bytes;
+        private final int start;
+        private final int length;
+
+        AsciiSequence(ByteBuffer bytes) {
+            this(bytes, bytes.position(), bytes.remaining());
+        }
+
+        private AsciiSequence(ByteBuffer bytes, int start, int length) {
+            this.bytes = bytes;
+            this.start = start;
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (bytes.get(start + index) & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(int from, int to) {
+            return new AsciiSequence(bytes, start + from, to - from);
         }
-        return madeMove;
     }
 }
@@ -0,0 +1,417 @@
+package model;
+
+import model.Exceptions.InvalidMapException;
+import model.Map.Map;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * A persistent index of the level files of a map directory, stored next to it as &lt;directory&gt;.catalog. For
+ * every map file and collection file it records the size, modification time and a hash of the contents, and
+ * what the level looks like: rows, columns and number of crates for a map file, number of levels for a
+ * collection file.
+ * <p>
+ * A refresh checks the size and modification time of every file and only reads again those which changed. Adding,
+ * removing or renaming a file changes the modification time of the directory, so as long as that time is unchanged,
+ * including across sessions, a quick refresh trusts the stored catalog and does not even list the directory. Files
+ * rewritten in place are then left to a refresh which checks every file, e.g. run in the background once the
+ * directory is watched, and to {@link #update(Collection)}.
+ */
+public class LevelCatalog {
+    /**
+     * The suffix appended to the path of the map directory to get the path of its catalog
+     */
+    public static final String SUFFIX = ".catalog";
+    private static final long MAGIC = 0x534F4B4F43415431L; //"SOKOCAT1"
+
+    private final Path directory;
+    private final Path file;
+    private long directoryModified = -1;
+    //replaced as a whole on every change, so it can be read from any thread while another one refreshes
+    private volatile TreeMap<String, Entry> entries = new TreeMap<>();
+
+    /**
+     * Loads the catalog of the directory if there is one. Call {@link #refresh(boolean)} to bring it up to date.
+     *
+     * @param directory The map directory
+     */
+    public LevelCatalog(Path directory) {
+        this.directory = directory;
+        this.file = directory.resolveSibling(directory.getFileName() + SUFFIX);
+        load();
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return The entries of all level files, sorted by file name
+     */
+    public Collection<Entry> getEntries() {
+        return entries.values();
+    }
+
+    /**
+     * @param fileName The name of a file in the directory
+     * @return Its entry, or null if it is not a level file of the directory
+     */
+    public Entry get(String fileName) {
+        return entries.get(fileName);
+    }
+
+    /**
+     * @param entry An entry of the catalog
+     * @return Whether the file still has the size and modification time recorded in the entry, i.e. whether the
+     * entry, including its content hash, can be trusted
+     */
+    public boolean isCurrent(Entry entry) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(directory.resolve(entry.name),
+                    BasicFileAttributes.class);
+            return entry.size == attributes.size() && entry.modified == attributes.lastModifiedTime().toMillis();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Indexes the collection file of the entry on first use and keeps the index in the entry. An entry is replaced
+     * when its file changes, so the index is kept for as long as the file is unchanged, however often the level
+     * list is rebuilt. Can be called from any thread.
+     *
+     * @param entry An entry of a collection file
+     * @return The indexed collection
+     * @throws InvalidMapException when the file cannot be read
+     */
+    public LevelCollection collection(Entry entry) throws InvalidMapException {
+        LevelCollection collection = entry.collection;
+        if (collection == null) {
+            //two threads may both index the file, which is harmless
+            collection = LevelCollection.open(directory.resolve(entry.name));
+            entry.collection = collection;
+        }
+        return collection;
+    }
+
+    /**
+     * Brings the catalog up to date with the directory and stores it if anything changed. Failing to store it is
+     * not an error, it is then rebuilt from the directory next time.
+     *
+     * @param checkFiles Whether to check every file even if the directory itself has not changed, which is needed
+     *                   to notice files rewritten in place
+     * @return Whether any entry was added, removed or changed
+     * @throws IOException when the directory cannot be read
+     */
+    public synchronized boolean refresh(boolean checkFiles) throws IOException {
+        long modified = Files.getLastModifiedTime(directory).toMillis();
+        if (modified == directoryModified && !checkFiles)
+            return false;
+
+        TreeMap<String, Entry> updated = new TreeMap<>();
+        boolean changed = false;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path path : files) {
+                String name = path.getFileName().toString();
+                if (!name.endsWith(".txt") && !LevelCollection.isCollection(name))
+                    continue;
+                BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                if (!attributes.isRegularFile())
+                    continue;
+                Entry entry = entries.get(name);
+                Entry current = current(path, attributes, entry);
+                changed |= current != entry;
+                updated.put(name, current);
+            }
+        }
+        changed |= updated.size() != entries.size();
+        commit(updated, modified);
+        return changed;
+    }
+
+    /**
+     * Brings the entries of the given files up to date, without listing the directory; files which no longer
+     * exist are removed. Other files are ignored.
+     *
+     * @param fileNames The names of files in the directory which were created, modified or deleted
+     * @return Whether any entry was added, removed or changed
+     * @throws IOException when a file cannot be read
+     */
+    public synchronized boolean update(Collection<String> fileNames) throws IOException {
+        long modified = Files.getLastModifiedTime(directory).toMillis();
+        TreeMap<String, Entry> updated = new TreeMap<>(entries);
+        boolean changed = false;
+        for (String name : fileNames) {
+            if (!name.endsWith(".txt") && !LevelCollection.isCollection(name))
+                continue;
+            Path path = directory.resolve(name);
+            BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            } catch (NoSuchFileException e) {
+                attributes = null;
+            }
+            Entry entry = updated.get(name);
+            if (attributes == null || !attributes.isRegularFile()) {
+                changed |= updated.remove(name) != null;
+            } else {
+                Entry current = current(path, attributes, entry);
+                changed |= current != entry;
+                updated.put(name, current);
+            }
+        }
+        commit(updated, modified);
+        return changed;
+    }
+
+    /**
+     * @return The entry if the size and modification time of the file still match it, otherwise a new entry read
+     * from the file
+     */
+    private static Entry current(Path path, BasicFileAttributes attributes, Entry entry) throws IOException {
+        if (entry != null && entry.size == attributes.size()
+                && entry.modified == attributes.lastModifiedTime().toMillis())
+            return entry;
+        return read(path, attributes);
+    }
+
+    /**
+     * Replaces the entries and stores the catalog if it changed
+     */
+    private void commit(TreeMap<String, Entry> updated, long modified) {
+        boolean changed = !updated.equals(entries) || modified != directoryModified;
+        entries = updated;
+        directoryModified = modified;
+        if (changed) {
+            try {
+                store();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * @return The names of all levels, in order: map files by name, and the levels of each collection file as
+     * numbered by {@link #levelName(String, int, int)}
+     */
+    public List<String> levelNames() {
+        List<String> names = new ArrayList<>();
+        for (Entry entry : getEntries()) {
+            if (entry.isCollection()) {
+                for (int i = 1; i <= entry.levels; i++) {
+                    names.add(levelName(entry.name, i, entry.levels));
+                }
+            } else {
+                names.add(entry.name);
+            }
+        }
+        return names;
+    }
+
+    /**
+     * @param fileName The name of a collection file
+     * @param number   The number of the level in the collection, from 1
+     * @param levels   The number of levels in the collection
+     * @return The name of the level: the file name, a colon and the number padded with zeros so that levels sort
+     * in order
+     */
+    public static String levelName(String fileName, int number, int levels) {
+        String digits = String.valueOf(number);
+        StringBuilder sb = new StringBuilder(fileName).append(':');
+        for (int i = digits.length(); i < String.valueOf(levels).length(); i++) {
+            sb.append('0');
+        }
+        return sb.append(digits).toString();
+    }
+
+    /**
+     * Reads a changed file to describe it. Files which fail to parse are still listed, with unknown dimensions,
+     * as they were before the catalog existed; loading them reports the error. A collection file is indexed from
+     * the bytes read for the hash, and the index kept in the entry.
+     */
+    private static Entry read(Path path, BasicFileAttributes attributes) throws IOException {
+        String name = path.getFileName().toString();
+        long hash;
+        int rows = -1;
+        int cols = -1;
+        int crates = -1;
+        int levels = 1;
+        LevelCollection collection = null;
+        try {
+            ByteBuffer data = MapParser.read(path);
+            hash = hash(data);
+            if (LevelCollection.isCollection(name)) {
+                collection = LevelCollection.open(path, data);
+                levels = collection.size();
+            } else {
+                Map map = MapParser.parse(data);
+                rows = map.getRows();
+                cols = map.getCols();
+                crates = map.getNumCrates();
+            }
+        } catch (InvalidMapException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            hash = 0;
+        }
+        Entry entry = new Entry(name, attributes.size(), attributes.lastModifiedTime().toMillis(), hash, rows, cols,
+                crates, levels);
+        entry.collection = collection;
+        return entry;
+    }
+
+    /**
+     * @return A 64-bit FNV-1a hash of the bytes from the position to the limit of the buffer
+     */
+    static long hash(ByteBuffer data) {
+        long h = 0xCBF29CE484222325L;
+        for (int i = data.position(); i < data.limit(); i++) {
+            h = (h ^ (data.get(i) & 0xFF)) * 0x100000001B3L;
+        }
+        return h;
+    }
+
+    private void load() {
+        if (!Files.isRegularFile(file))
+            return;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readLong() != MAGIC)
+                return;
+            long modified = in.readLong();
+            int count = in.readInt();
+            TreeMap<String, Entry> loaded = new TreeMap<>();
+            for (int i = 0; i < count; i++) {
+                Entry entry = new Entry(in.readUTF(), in.readLong(), in.readLong(), in.readLong(), in.readInt(),
+                        in.readInt(), in.readInt(), in.readInt());
+                loaded.put(entry.name, entry);
+            }
+            entries = loaded;
+            directoryModified = modified;
+        } catch (IOException e) {
+            //a damaged catalog is rebuilt by the next refresh
+        }
+    }
+
+    /**
+     * Writes the catalog to a temporary file first and moves it into place, so a crash never leaves a partial one
+     */
+    private void store() throws IOException {
+        Path tmp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeLong(MAGIC);
+                out.writeLong(directoryModified);
+                out.writeInt(entries.size());
+                for (Entry entry : entries.values()) {
+                    out.writeUTF(entry.name);
+                    out.writeLong(entry.size);
+                    out.writeLong(entry.modified);
+                    out.writeLong(entry.hash);
+                    out.writeInt(entry.rows);
+                    out.writeInt(entry.cols);
+                    out.writeInt(entry.crates);
+                    out.writeInt(entry.levels);
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * What the catalog knows about a level file
+     */
+    public static final class Entry {
+        private final String name;
+        private final long size;
+        private final long modified;
+        private final long hash;
+        private final int rows;
+        private final int cols;
+        private final int crates;
+        private final int levels;
+        //the index of a collection file, not stored; see LevelCatalog#collection(Entry)
+        private volatile LevelCollection collection;
+
+        Entry(String name, long size, long modified, long hash, int rows, int cols, int crates, int levels) {
+            this.name = name;
+            this.size = size;
+            this.modified = modified;
+            this.hash = hash;
+            this.rows = rows;
+            this.cols = cols;
+            this.crates = crates;
+            this.levels = levels;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * @return The modification time of the file, in milliseconds since the epoch
+         */
+        public long getModified() {
+            return modified;
+        }
+
+        /**
+         * @return A hash of the contents of the file, 0 if it could not be parsed
+         */
+        public long getHash() {
+            return hash;
+        }
+
+        /**
+         * @return The number of rows of the map, -1 for collections and unparsable files
+         */
+        public int getRows() {
+            return rows;
+        }
+
+        /**
+         * @return The number of columns of the map, -1 for collections and unparsable files
+         */
+        public int getCols() {
+            return cols;
+        }
+
+        /**
+         * @return The number of crates of the map, -1 for collections and unparsable files
+         */
+        public int getCrates() {
+            return crates;
+        }
+
+        /**
+         * @return The number of levels in the file, 1 for a map file
+         */
+        public int getLevels() {
+            return levels;
+        }
+
+        public boolean isCollection() {
+            return LevelCollection.isCollection(name);
+        }
+    }
+}
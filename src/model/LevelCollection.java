@@ -0,0 +1,223 @@
+package model;
+
+import model.Exceptions.InvalidMapException;
+import model.Exceptions.MapFormatException;
+import model.Exceptions.UnreadableMapException;
+import model.Map.Map;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A multi-level collection file in the standard XSB format: levels are blocks of rows made of # (wall), space, - or
+ * _ (floor), $ (crate), . (goal), * (crate on goal), @ (player) and + (player on goal), separated by blank lines,
+ * comments or other text. A "Title:" line after a level names it.
+ * <p>
+ * Opening a collection scans the file once and only keeps a small index of where every level starts and
+ * ends. A level is read and parsed when it is loaded, so collections with tens of thousands of levels open quickly
+ * and take little memory.
+ */
+public class LevelCollection {
+    private static final String TITLE = "Title:";
+    //XSB char to map file char, 0 for chars which cannot appear in a level row
+    private static final char[] TO_MAP_CHAR = new char[256];
+
+    static {
+        TO_MAP_CHAR['#'] = '#';
+        TO_MAP_CHAR[' '] = '.';
+        TO_MAP_CHAR['-'] = '.';
+        TO_MAP_CHAR['_'] = '.';
+        TO_MAP_CHAR['$'] = 'c';
+        TO_MAP_CHAR['.'] = 'C';
+        TO_MAP_CHAR['*'] = '$';
+        TO_MAP_CHAR['@'] = '@';
+        TO_MAP_CHAR['+'] = '&';
+    }
+
+    private final Path file;
+    private int size;
+    //per level: the byte offset of its first row, the byte length of its rows, its number of rows and columns, and
+    //the line its first row is on
+    private long[] offsets = new long[16];
+    private int[] lengths = new int[16];
+    private int[] rows = new int[16];
+    private int[] cols = new int[16];
+    private int[] lines = new int[16];
+    private String[] titles = new String[16];
+
+    private LevelCollection(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * @param file A file name
+     * @return Whether the file name has the extension of a collection file, .xsb or .sok
+     */
+    public static boolean isCollection(String file) {
+        String name = file.toLowerCase();
+        return name.endsWith(".xsb") || name.endsWith(".sok");
+    }
+
+    /**
+     * Scans the file and indexes its levels
+     *
+     * @param file A collection file
+     * @return The indexed collection
+     * @throws UnreadableMapException when the file cannot be read
+     */
+    public static LevelCollection open(Path file) throws UnreadableMapException {
+        return open(file, MapParser.read(file));
+    }
+
+    /**
+     * Indexes the levels of a collection file already read, e.g. by {@link MapParser#read(Path)}
+     *
+     * @param file The collection file, which levels are loaded from later
+     * @param data The contents of the file, from the position to the limit. Only absolute reads are made.
+     * @return The indexed collection
+     */
+    public static LevelCollection open(Path file, ByteBuffer data) {
+        LevelCollection collection = new LevelCollection(file);
+        collection.scan(data);
+        return collection;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * @return The number of levels in the collection
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param index The index of a level, from 0
+     * @return The title of the level, or null if it has none
+     */
+    public String getTitle(int index) {
+        return titles[index];
+    }
+
+    /**
+     * Reads and parses a level
+     *
+     * @param index The index of a level, from 0
+     * @return The initialized map of the level
+     * @throws InvalidMapException when the file cannot be read anymore or the level is invalid
+     */
+    public Map load(int index) throws InvalidMapException {
+        ByteBuffer data = ByteBuffer.allocate(lengths[index]);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (data.hasRemaining()) {
+                if (channel.read(data, offsets[index] + data.position()) < 0)
+                    throw new MapFormatException("Level " + (index + 1) + " is cut off, the file has changed",
+                            lines[index], 1);
+            }
+        } catch (IOException e) {
+            throw new UnreadableMapException("Cannot read " + file + ": " + e, e);
+        }
+
+        char[][] rep = new char[rows[index]][cols[index]];
+        int r = 0;
+        int c = 0;
+        for (int i = 0; i < data.limit(); i++) {
+            int b = data.get(i) & 0xFF;
+            if (b == '\n') {
+                if (r < rep.length)
+                    Arrays.fill(rep[r], c, rep[r].length, '.');
+                r++;
+                c = 0;
+            } else if (b != '\r') {
+                if (TO_MAP_CHAR[b] == 0 || r >= rep.length || c >= rep[r].length)
+                    throw new MapFormatException("Level " + (index + 1) + " has changed in the file",
+                            lines[index] + r, c + 1);
+                rep[r][c++] = TO_MAP_CHAR[b];
+            }
+        }
+        if (r < rep.length)
+            Arrays.fill(rep[r], c, rep[r].length, '.');
+
+        Map map = new Map();
+        map.initialize(rep.length, cols[index], rep);
+        return map;
+    }
+
+    /**
+     * Reads the file line by line. Rows are lines made only of XSB chars with at least one wall; every run of rows
+     * is a level.
+     */
+    private void scan(ByteBuffer data) {
+        byte[] line = new byte[256];
+        int start = data.position();
+        int limit = data.limit();
+        int pos = start;
+        int lineNumber = 0;
+        boolean inLevel = false;
+        while (pos < limit) {
+            long lineStart = pos - start;
+            int length = 0;
+            while (pos < limit) {
+                byte b = data.get(pos++);
+                if (b == '\n')
+                    break;
+                if (length == line.length)
+                    line = Arrays.copyOf(line, length * 2);
+                line[length++] = b;
+            }
+            lineNumber++;
+            if (length > 0 && line[length - 1] == '\r')
+                length--;
+
+            if (isRow(line, length)) {
+                if (!inLevel) {
+                    startLevel(lineStart, lineNumber);
+                    inLevel = true;
+                }
+                int last = size - 1;
+                rows[last]++;
+                cols[last] = Math.max(cols[last], length);
+                //the length runs up to the end of this row, without its line break
+                lengths[last] = (int) (lineStart + length - offsets[last]);
+            } else {
+                inLevel = false;
+                String text = new String(line, 0, length, StandardCharsets.ISO_8859_1).trim();
+                if (size > 0 && titles[size - 1] == null && text.startsWith(TITLE))
+                    titles[size - 1] = text.substring(TITLE.length()).trim();
+            }
+        }
+    }
+
+    private static boolean isRow(byte[] line, int length) {
+        boolean wall = false;
+        for (int i = 0; i < length; i++) {
+            int b = line[i] & 0xFF;
+            if (TO_MAP_CHAR[b] == 0)
+                return false;
+            wall |= b == '#';
+        }
+        return wall;
+    }
+
+    private void startLevel(long offset, int line) {
+        if (size == offsets.length) {
+            int n = size * 2;
+            offsets = Arrays.copyOf(offsets, n);
+            lengths = Arrays.copyOf(lengths, n);
+            rows = Arrays.copyOf(rows, n);
+            cols = Arrays.copyOf(cols, n);
+            lines = Arrays.copyOf(lines, n);
+            titles = Arrays.copyOf(titles, n);
+        }
+        offsets[size] = offset;
+        lines[size] = line;
+        size++;
+    }
+}
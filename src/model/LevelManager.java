@@ -8,15 +8,11 @@ import javafx.beans.property.StringProperty;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import model.Exceptions.InvalidMapException;
+import model.Map.Map;
 
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
-import java.util.stream.Collector;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 /**
  * Keeps track of the current GameLevel and level name. Also tracks information
@@ -31,7 +27,12 @@ public class LevelManager {
     private final IntegerProperty curGameLevelNumRestarts = new SimpleIntegerProperty();
     private final GameLevel gameLevel = new GameLevel();
     private Timer t = new Timer(true); //declare as daemon, so application exits when Platform.exit is called
-    private String mapDirectory = "";
+    private volatile String mapDirectory = "";
+    //read by the watcher thread
+    private volatile LevelCatalog catalog;
+    private MapDirectoryWatcher watcher;
+    //the position of every level name in levelNames, for O(1) next and previous lookups
+    private final HashMap<String, Integer> levelPositions = new HashMap<>();
 
     private LevelManager() {}
 
@@ -41,6 +42,8 @@ public class LevelManager {
 
     public void setMapDirectory(String mapDirectory) {
         this.mapDirectory = mapDirectory;
+        catalog = null;
+        stopWatching();
     }
 
     public GameLevel getGameLevel() {
@@ -48,24 +51,83 @@ public class LevelManager {
     }
 
     /**
-     * Clears and loads the the level names into {@link #levelNames}. Can be done succinctly using
-     * Streams, Predicates, and Consumers. Load the files by alphabetical sorted order.
+     * Loads the level names into {@link #levelNames}, in alphabetical order, from the {@link LevelCatalog} of the
+     * map directory. The stored catalog is trusted as long as the directory itself is unchanged, so opening a large
+     * directory does not touch its files; otherwise only files changed since the last call are read. The list is
+     * only replaced if a level was added, removed or changed.
      * <p>
-     * Hints: Files.walk(Paths.get(mapDirectory), 1) returns a Stream of files 1 folder deep
+     * Every .txt file is a level, and so is every level of a collection file (see {@link LevelCollection}), named
+     * as by {@link LevelCatalog#levelName(String, int, int)}.
+     * <p>
+     * The map directory is then watched, and {@link #levelNames} kept up to date with it (see
+     * {@link #reloadChangedLevels(LevelCatalog, Set)}). The watcher first checks every file in the background, which
+     * catches files rewritten in place while the catalog was not in use.
      */
     public void loadLevelNamesFromDisk() {
-        //TODO
         try {
-            levelNames.clear();
-            Files.walk(Paths.get(mapDirectory),1)
-                    .filter(p-> p.getFileName().toString().endsWith(".txt"))
-                    .forEach(p1-> levelNames.add(p1.getFileName().toString()));
-            FXCollections.sort(levelNames);
+            boolean fresh = catalog == null;
+            if (fresh)
+                catalog = new LevelCatalog(Paths.get(mapDirectory));
+            if (catalog.refresh(false) || fresh)
+                setLevelNames(catalog.levelNames());
+            if (watcher == null) {
+                LevelCatalog watched = catalog;
+                watcher = new MapDirectoryWatcher(watched.getDirectory(), files -> reloadChangedLevels(watched, files));
+            }
         } catch (IOException e){
             e.printStackTrace();
         }
     }
 
+    /**
+     * Called on the watcher thread with a batch of changed files. The catalog is brought up to date there, so no
+     * file is read on the FX thread, and {@link #levelNames} is replaced in a single update on the FX thread.
+     *
+     * @param watched The catalog of the watched directory
+     * @param files   The names of the changed files, or null to check every file
+     */
+    private void reloadChangedLevels(LevelCatalog watched, Set<String> files) {
+        try {
+            boolean changed = files == null ? watched.refresh(true) : watched.update(files);
+            if (!changed)
+                return;
+            List<String> names = watched.levelNames();
+            Platform.runLater(() -> {
+                //the user may have chosen another directory meanwhile
+                if (catalog == watched)
+                    setLevelNames(names);
+            });
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void setLevelNames(List<String> names) {
+        levelPositions.clear();
+        for (int i = 0; i < names.size(); i++) {
+            levelPositions.put(names.get(i), i);
+        }
+        levelNames.setAll(names);
+    }
+
+    private void stopWatching() {
+        if (watcher == null)
+            return;
+        try {
+            watcher.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        watcher = null;
+    }
+
+    /**
+     * @return The catalog of the map directory, or null before the level names are loaded
+     */
+    public LevelCatalog getCatalog() {
+        return catalog;
+    }
+
     public ObservableList<String> getLevelNames() {
         return levelNames;
     }
@@ -90,7 +152,60 @@ public class LevelManager {
         curLevelNameProperty.set(levelName);
         curGameLevelExistedDuration.set(0);
         gameLevel.numPushesProperty().set(0);
-        gameLevel.loadMap(mapDirectory+"/"+levelName);
+        int separator = levelName.lastIndexOf(':');
+        LevelCollection collection = separator == -1 ? null : collection(levelName.substring(0, separator));
+        if (collection != null)
+            gameLevel.loadMap(collection, Integer.parseInt(levelName.substring(separator + 1)) - 1);
+        else
+            gameLevel.loadMap(mapDirectory+"/"+levelName);
+    }
+
+    /**
+     * Loads a fresh map of a level without changing the current level, e.g. to preview it. Can be called from any
+     * thread.
+     *
+     * @param levelName The name of a level in {@link #levelNames}
+     * @return The initialized map of the level
+     * @throws InvalidMapException if the map was invalid
+     */
+    public Map loadMap(String levelName) throws InvalidMapException {
+        int separator = levelName.lastIndexOf(':');
+        LevelCollection collection = separator == -1 ? null : collection(levelName.substring(0, separator));
+        if (collection != null)
+            return collection.load(Integer.parseInt(levelName.substring(separator + 1)) - 1);
+        return MapParser.parse(Paths.get(mapDirectory, levelName));
+    }
+
+    /**
+     * @param levelName The name of a level in {@link #levelNames}
+     * @return The catalog entry of its file, or null if it is unknown
+     */
+    public LevelCatalog.Entry getCatalogEntry(String levelName) {
+        LevelCatalog catalog = this.catalog;
+        int separator = levelName.lastIndexOf(':');
+        return catalog == null ? null : catalog.get(separator == -1 ? levelName : levelName.substring(0, separator));
+    }
+
+    /**
+     * @param fileName The name of a file in the map directory
+     * @return The indexed collection, or null if the file is not a collection file of the catalog. The index is
+     * kept in the catalog entry, so it is only built again once the file changes.
+     */
+    private LevelCollection collection(String fileName) throws InvalidMapException {
+        LevelCatalog catalog = this.catalog;
+        LevelCatalog.Entry entry = catalog == null ? null : catalog.get(fileName);
+        if (entry == null || !entry.isCollection())
+            return null;
+        return catalog.collection(entry);
+    }
+
+    /**
+     * Restarts the current level in memory: rewinds the map through the move journal of the {@link GameLevel}
+     * instead of loading it from disk again, and resets the existed duration. The timer is not started.
+     */
+    public void restartLevel() {
+        curGameLevelExistedDuration.set(0);
+        gameLevel.restart();
     }
 
     /**
@@ -140,11 +255,17 @@ public class LevelManager {
      * name is always valid.
      */
     public String getNextLevelName() {
-        //TODO
-        if (!curLevelNameProperty.getValue().equals(levelNames.get(levelNames.size()-1))){
-            return levelNames.get(levelNames.indexOf(curLevelNameProperty.getValue())+1);
-        }
-        return null;//NOTE: You may also change this line
+        Integer position = levelPositions.get(curLevelNameProperty.getValue());
+        return position == null || position + 1 >= levelNames.size() ? null : levelNames.get(position + 1);
+    }
+
+    /**
+     * @return The name of the level which appears immediately before the current level name inside
+     * {@link #levelNames}, or null if the current level is the first level
+     */
+    public String getPreviousLevelName() {
+        Integer position = levelPositions.get(curLevelNameProperty.getValue());
+        return position == null || position == 0 ? null : levelNames.get(position - 1);
     }
 
     public IntegerProperty curGameLevelExistedDurationProperty() {
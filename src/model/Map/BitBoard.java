@@ -0,0 +1,78 @@
+package model.Map;
+
+/**
+ * Static helpers for packed bitboards, i.e. long arrays holding one bit per map position. A position is the
+ * index r * cols + c of a cell in the map.
+ */
+public final class BitBoard {
+
+    private BitBoard() {
+    }
+
+    /**
+     * @param size The number of positions the board must hold
+     * @return A new, empty board which can hold the given number of positions
+     */
+    public static long[] create(int size) {
+        return new long[(size + 63) >>> 6];
+    }
+
+    /**
+     * @param board The board to read
+     * @param pos   The position to test
+     * @return Whether the bit at the position is set
+     */
+    public static boolean get(long[] board, int pos) {
+        return (board[pos >>> 6] & (1L << pos)) != 0;
+    }
+
+    /**
+     * @param board The board to modify
+     * @param pos   The position whose bit should be set
+     */
+    public static void set(long[] board, int pos) {
+        board[pos >>> 6] |= 1L << pos;
+    }
+
+    /**
+     * @param board The board to modify
+     * @param pos   The position whose bit should be cleared
+     */
+    public static void clear(long[] board, int pos) {
+        board[pos >>> 6] &= ~(1L << pos);
+    }
+
+    /**
+     * @param board The board to read
+     * @return The number of set bits in the board
+     */
+    public static int count(long[] board) {
+        int n = 0;
+        for (long w : board) {
+            n += Long.bitCount(w);
+        }
+        return n;
+    }
+
+    /**
+     * @param board The board to read
+     * @param from  The position to start searching from, inclusive
+     * @return The first set position at or after from, or -1 if there is none
+     */
+    public static int next(long[] board, int from) {
+        int i = from >>> 6;
+        if (i >= board.length) {
+            return -1;
+        }
+        long w = board[i] & (-1L << from);
+        while (true) {
+            if (w != 0) {
+                return (i << 6) + Long.numberOfTrailingZeros(w);
+            }
+            if (++i == board.length) {
+                return -1;
+            }
+            w = board[i];
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package model.Map;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashSet;
+
+/**
+ * Detects corral deadlocks. A corral is an area the player cannot reach because crates fence it off. For every
+ * corral, all crates except the ones touching it are removed, and a bounded breadth-first search over pushes
+ * checks whether the remaining crates can still all be pushed onto destinations, or at least be moved so that the
+ * player gets into the corral. Removing crates only makes the level easier, so if neither is possible the
+ * original position is deadlocked as well. If the search runs out of its node budget, the corral is given the
+ * benefit of the doubt.
+ * <p>
+ * The detector only works on bitboards, so it can be used both by {@link Map} and by search code with its own
+ * board representation. It assumes every crate has to end on a destination. Instances are not thread safe.
+ */
+public class CorralDetector {
+    public static final int DEFAULT_NODE_LIMIT = 2000;
+
+    private final int rows;
+    private final int cols;
+    private final long[] walls;
+    private final long[] dests;
+    private final long[] deadSquares;
+    private int nodeLimit = DEFAULT_NODE_LIMIT;
+
+    //scratch space: stamp[pos] == current marks a square reached by the current fill
+    private final int[] stamp;
+    private final int[] queue;
+    private int queueSize;
+    private int current;
+    private final int[] corralOf;
+
+    /**
+     * @param rows        The number of rows of the board
+     * @param cols        The number of columns of the board
+     * @param walls       The bitboard of walls
+     * @param dests       The bitboard of destinations
+     * @param deadSquares The bitboard of squares from which a crate can never reach a destination
+     */
+    public CorralDetector(int rows, int cols, long[] walls, long[] dests, long[] deadSquares) {
+        this.rows = rows;
+        this.cols = cols;
+        this.walls = walls;
+        this.dests = dests;
+        this.deadSquares = deadSquares;
+        stamp = new int[rows * cols];
+        queue = new int[rows * cols];
+        corralOf = new int[rows * cols];
+    }
+
+    public int getNodeLimit() {
+        return nodeLimit;
+    }
+
+    /**
+     * @param nodeLimit The maximum number of positions the search of a single corral may visit
+     */
+    public void setNodeLimit(int nodeLimit) {
+        this.nodeLimit = nodeLimit;
+    }
+
+    /**
+     * @param crates The bitboard of crates
+     * @param player The position of the player
+     * @return Whether some corral can provably never be opened nor have its crates put on destinations
+     */
+    public boolean isDeadlocked(long[] crates, int player) {
+        fill(crates, player);
+        long[] region = BitBoard.create(rows * cols);
+        for (int i = 0; i < queueSize; i++) {
+            BitBoard.set(region, queue[i]);
+        }
+        Arrays.fill(corralOf, 0);
+        int numCorrals = 0;
+
+        for (int pos = 0; pos < rows * cols; pos++) {
+            if (BitBoard.get(region, pos) || corralOf[pos] != 0 || BitBoard.get(walls, pos)
+                    || BitBoard.get(crates, pos))
+                continue;
+
+            int corral = ++numCorrals;
+            long[] fence = BitBoard.create(rows * cols);
+            int head = 0;
+            int tail = 0;
+            corralOf[pos] = corral;
+            queue[tail++] = pos;
+            while (head < tail) {
+                int x = queue[head++];
+                for (int d = 0; d < 4; d++) {
+                    int y = step(x, d);
+                    if (y == -1 || BitBoard.get(walls, y) || corralOf[y] != 0)
+                        continue;
+                    if (BitBoard.get(crates, y)) {
+                        BitBoard.set(fence, y);
+                    } else {
+                        corralOf[y] = corral;
+                        queue[tail++] = y;
+                    }
+                }
+            }
+
+            if (!allOnDests(fence) && !canBeFreed(fence, player, corral))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Breadth-first search over the pushes of the fence crates alone
+     *
+     * @return Whether the crates can all reach destinations or let the player into the corral, or whether the
+     * search ran out of budget
+     */
+    private boolean canBeFreed(long[] fence, int player, int corral) {
+        HashSet<State> seen = new HashSet<>();
+        ArrayDeque<State> open = new ArrayDeque<>();
+        State root = new State(fence, normalize(fence, player));
+        seen.add(root);
+        open.add(root);
+
+        while (!open.isEmpty()) {
+            if (seen.size() > nodeLimit)
+                return true;
+            State s = open.poll();
+            fill(s.crates, s.player);
+            for (int i = 0; i < queueSize; i++) {
+                if (corralOf[queue[i]] == corral)
+                    return true;
+            }
+            int reached = current;
+
+            int[] pushes = new int[4 * BitBoard.count(s.crates)];
+            int numPushes = 0;
+            for (int c = BitBoard.next(s.crates, 0); c != -1; c = BitBoard.next(s.crates, c + 1)) {
+                for (int d = 0; d < 4; d++) {
+                    int behind = step(c, d ^ 1);
+                    int target = step(c, d);
+                    if (behind != -1 && stamp[behind] == reached && target != -1 && !BitBoard.get(walls, target)
+                            && !BitBoard.get(s.crates, target) && !BitBoard.get(deadSquares, target))
+                        pushes[numPushes++] = (c << 2) | d;
+                }
+            }
+
+            for (int i = 0; i < numPushes; i++) {
+                int from = pushes[i] >>> 2;
+                int to = step(from, pushes[i] & 3);
+                long[] next = s.crates.clone();
+                BitBoard.clear(next, from);
+                BitBoard.set(next, to);
+                if (allOnDests(next))
+                    return true;
+                State child = new State(next, normalize(next, from));
+                if (seen.add(child))
+                    open.add(child);
+            }
+        }
+        return false;
+    }
+
+    private boolean allOnDests(long[] crates) {
+        for (int i = 0; i < crates.length; i++) {
+            if ((crates[i] & ~dests[i]) != 0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return The top-left square of the region of the player
+     */
+    private int normalize(long[] crates, int player) {
+        fill(crates, player);
+        int min = player;
+        for (int i = 0; i < queueSize; i++) {
+            min = Math.min(min, queue[i]);
+        }
+        return min;
+    }
+
+    /**
+     * Flood fills the squares the player can walk to, stamping them with a new value of {@link #current}
+     */
+    private void fill(long[] crates, int player) {
+        if (++current == 0) {
+            Arrays.fill(stamp, 0);
+            current = 1;
+        }
+        int head = 0;
+        int tail = 0;
+        stamp[player] = current;
+        queue[tail++] = player;
+        while (head < tail) {
+            int x = queue[head++];
+            for (int d = 0; d < 4; d++) {
+                int y = step(x, d);
+                if (y != -1 && stamp[y] != current && !BitBoard.get(walls, y) && !BitBoard.get(crates, y)) {
+                    stamp[y] = current;
+                    queue[tail++] = y;
+                }
+            }
+        }
+        queueSize = tail;
+    }
+
+    /**
+     * @param pos A position
+     * @param d   0: up, 1: down, 2: left, 3: right, so that d ^ 1 is the opposite direction
+     * @return The neighbouring position, or -1 if it is out of bounds
+     */
+    private int step(int pos, int d) {
+        int r = pos / cols;
+        int c = pos % cols;
+        switch (d) {
+            case 0:
+                return r > 0 ? pos - cols : -1;
+            case 1:
+                return r < rows - 1 ? pos + cols : -1;
+            case 2:
+                return c > 0 ? pos - 1 : -1;
+            default:
+                return c < cols - 1 ? pos + 1 : -1;
+        }
+    }
+
+    private static final class State {
+        final long[] crates;
+        final int player;
+
+        State(long[] crates, int player) {
+            this.crates = crates;
+            this.player = player;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof State && ((State) o).player == player && Arrays.equals(((State) o).crates, crates);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(crates) * 31 + player;
+        }
+    }
+}
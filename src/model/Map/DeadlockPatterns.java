@@ -0,0 +1,286 @@
+package model.Map;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A per-level database of two-crate deadlocks. For every pair of squares and every player square it records
+ * whether the two crates could never both reach destinations, even with all other crates removed. Other crates
+ * only ever block the player, so such a pair is a deadlock in any state containing it.
+ * <p>
+ * The table only depends on the walls and destinations of a level. It is computed once with a backward search
+ * from all pairs of destinations, and cached next to the map file, keyed by a hash of the layout, so later loads
+ * memory-map the cache instead of searching again.
+ */
+public final class DeadlockPatterns {
+    /**
+     * Levels with more floor squares than this get no patterns, which keeps the table under 256 KB
+     */
+    public static final int MAX_FLOOR = 128;
+    /**
+     * The suffix appended to the name of a map file to get the name of its cache file
+     */
+    public static final String CACHE_SUFFIX = ".deadlocks";
+    /**
+     * A database without any patterns
+     */
+    public static final DeadlockPatterns NONE = new DeadlockPatterns(new int[0], 0, LongBuffer.allocate(0));
+
+    private static final long MAGIC = 0x534F4B4F44503031L; //"SOKODP01"
+    private static final int HEADER_BYTES = 24;
+    //indexed by Map.Direction ordinal: UP, DOWN, LEFT, RIGHT; the opposite of d is d ^ 1
+    private static final Map.Direction[] DIRECTIONS = Map.Direction.values();
+
+    private final int[] floorIndex;
+    private final int numFloor;
+    //bit (a * numFloor + b) * numFloor + p, for floor indices a < b, is set if crates on a and b with the player on
+    //p are deadlocked
+    private final LongBuffer bits;
+
+    private DeadlockPatterns(int[] floorIndex, int numFloor, LongBuffer bits) {
+        this.floorIndex = floorIndex;
+        this.numFloor = numFloor;
+        this.bits = bits;
+    }
+
+    /**
+     * @param a      The position of a crate
+     * @param b      The position of another crate
+     * @param player The position of the player
+     * @return Whether the two crates can never both reach destinations with the player starting there
+     */
+    public boolean isDeadlocked(int a, int b, int player) {
+        if (numFloor == 0)
+            return false;
+        int i = floorIndex[a];
+        int j = floorIndex[b];
+        if (i > j) {
+            int t = i;
+            i = j;
+            j = t;
+        }
+        long bit = ((long) i * numFloor + j) * numFloor + floorIndex[player];
+        return (bits.get((int) (bit >>> 6)) & (1L << bit)) != 0;
+    }
+
+    /**
+     * Loads the patterns of a level from the cache next to its map file, or computes them and writes the cache
+     * if it is missing or belongs to another layout. Failing to write the cache is not an error, the computed
+     * patterns are used either way.
+     *
+     * @param mapFile The map file the level was loaded from
+     * @param map     The initialized map of the level
+     * @return The patterns of the level
+     */
+    public static DeadlockPatterns forLevel(Path mapFile, Map map) {
+        int[] floorIndex = new int[map.getRows() * map.getCols()];
+        int numFloor = indexFloor(map, floorIndex);
+        if (!hasPatterns(map, numFloor))
+            return NONE;
+
+        long key = layoutKey(map);
+        Path cache = mapFile.resolveSibling(mapFile.getFileName() + CACHE_SUFFIX);
+        LongBuffer cached = load(cache, key, numFloor);
+        if (cached != null)
+            return new DeadlockPatterns(floorIndex, numFloor, cached);
+
+        long[] bits = search(map, floorIndex, numFloor);
+        try {
+            store(cache, key, numFloor, bits);
+        } catch (IOException ignored) {
+        }
+        return new DeadlockPatterns(floorIndex, numFloor, LongBuffer.wrap(bits));
+    }
+
+    /**
+     * Computes the patterns of a level without touching the disk
+     *
+     * @param map The initialized map of the level
+     * @return The patterns of the level
+     */
+    public static DeadlockPatterns compute(Map map) {
+        int[] floorIndex = new int[map.getRows() * map.getCols()];
+        int numFloor = indexFloor(map, floorIndex);
+        if (!hasPatterns(map, numFloor))
+            return NONE;
+        return new DeadlockPatterns(floorIndex, numFloor, LongBuffer.wrap(search(map, floorIndex, numFloor)));
+    }
+
+    /**
+     * @param map An initialized map
+     * @return A hash of the size, walls and destinations of the map, which are all the patterns depend on
+     */
+    public static long layoutKey(Map map) {
+        long h = 0xCBF29CE484222325L;
+        h = (h ^ map.getRows()) * 0x100000001B3L;
+        h = (h ^ map.getCols()) * 0x100000001B3L;
+        for (int pos = 0; pos < map.getRows() * map.getCols(); pos++) {
+            h = (h ^ (map.isWall(pos) ? 1 : map.isDest(pos) ? 2 : 3)) * 0x100000001B3L;
+        }
+        return h;
+    }
+
+    /**
+     * Pairs are only deadlocks when every crate must end on a destination
+     */
+    private static boolean hasPatterns(Map map, int numFloor) {
+        int numCrates = 0;
+        int numDests = 0;
+        for (int pos = 0; pos < map.getRows() * map.getCols(); pos++) {
+            if (map.hasCrate(pos))
+                numCrates++;
+            if (map.isDest(pos))
+                numDests++;
+        }
+        return numFloor <= MAX_FLOOR && numCrates == numDests && numDests >= 2;
+    }
+
+    /**
+     * @return The number of floor squares, after numbering them in floorIndex; walls get -1
+     */
+    private static int indexFloor(Map map, int[] floorIndex) {
+        int n = 0;
+        for (int pos = 0; pos < floorIndex.length; pos++) {
+            floorIndex[pos] = map.isWall(pos) ? -1 : n++;
+        }
+        return n;
+    }
+
+    /**
+     * Runs a breadth-first search backwards from every state with both crates on destinations, walking the player
+     * around and pulling crates. Every state it reaches can be solved; the others are the deadlocks.
+     */
+    private static long[] search(Map map, int[] floorIndex, int f) {
+        int[] positions = new int[f];
+        for (int pos = 0; pos < floorIndex.length; pos++) {
+            if (floorIndex[pos] != -1)
+                positions[floorIndex[pos]] = pos;
+        }
+        int[][] next = new int[f][4];
+        for (int i = 0; i < f; i++) {
+            int r = positions[i] / map.getCols();
+            int c = positions[i] % map.getCols();
+            for (Map.Direction d : DIRECTIONS) {
+                int nr = r + d.getDR();
+                int nc = c + d.getDC();
+                boolean inside = nr >= 0 && nr < map.getRows() && nc >= 0 && nc < map.getCols();
+                next[i][d.ordinal()] = inside ? floorIndex[map.index(nr, nc)] : -1;
+            }
+        }
+
+        long[] solvable = new long[(int) (((long) f * f * f + 63) >>> 6)];
+        Queue queue = new Queue(f * f);
+        for (int a = 0; a < f; a++) {
+            for (int b = a + 1; b < f; b++) {
+                if (!map.isDest(positions[a]) || !map.isDest(positions[b]))
+                    continue;
+                for (int p = 0; p < f; p++) {
+                    if (p != a && p != b)
+                        queue.visit(solvable, f, a, b, p);
+                }
+            }
+        }
+        while (queue.head < queue.tail) {
+            int s = queue.states[queue.head++];
+            int p = s % f;
+            int b = s / f % f;
+            int a = s / f / f;
+            for (int d = 0; d < 4; d++) {
+                int q = next[p][d];
+                if (q == -1 || q == a || q == b)
+                    continue;
+                queue.visit(solvable, f, a, b, q);
+                //the player steps from p to q and drags along the crate behind it
+                int c = next[p][d ^ 1];
+                if (c == a)
+                    queue.visit(solvable, f, Math.min(p, b), Math.max(p, b), q);
+                else if (c == b)
+                    queue.visit(solvable, f, Math.min(a, p), Math.max(a, p), q);
+            }
+        }
+
+        long[] dead = new long[solvable.length];
+        for (int a = 0; a < f; a++) {
+            for (int b = a + 1; b < f; b++) {
+                for (int p = 0; p < f; p++) {
+                    int s = (a * f + b) * f + p;
+                    if (p != a && p != b && (solvable[s >>> 6] & (1L << s)) == 0)
+                        dead[s >>> 6] |= 1L << s;
+                }
+            }
+        }
+        return dead;
+    }
+
+    /**
+     * The queue of the search. It grows with the states actually reached, which on most levels are a small part of
+     * the f^3 encodable ones.
+     */
+    private static final class Queue {
+        int[] states;
+        int head;
+        int tail;
+
+        Queue(int capacity) {
+            states = new int[capacity];
+        }
+
+        /**
+         * Marks the state as seen and queues it, unless it was seen before
+         */
+        void visit(long[] seen, int f, int a, int b, int p) {
+            int s = (a * f + b) * f + p;
+            if ((seen[s >>> 6] & (1L << s)) != 0)
+                return;
+            seen[s >>> 6] |= 1L << s;
+            if (tail == states.length)
+                states = Arrays.copyOf(states, tail * 2);
+            states[tail++] = s;
+        }
+    }
+
+    /**
+     * @return The memory-mapped table, or null if the cache is missing, unreadable or for another layout
+     */
+    private static LongBuffer load(Path cache, long key, int numFloor) {
+        if (!Files.isRegularFile(cache))
+            return null;
+        long words = ((long) numFloor * numFloor * numFloor + 63) >>> 6;
+        try (FileChannel channel = FileChannel.open(cache, StandardOpenOption.READ)) {
+            if (channel.size() != HEADER_BYTES + words * 8)
+                return null;
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getLong(0) != MAGIC || buffer.getLong(8) != key || buffer.getInt(16) != numFloor)
+                return null;
+            buffer.position(HEADER_BYTES);
+            return buffer.slice().asLongBuffer();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Writes the cache to a temporary file first and moves it into place, so that processes loading the same
+     * level at the same time never see a partial file
+     */
+    private static void store(Path cache, long key, int numFloor, long[] bits) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + bits.length * 8);
+        buffer.putLong(MAGIC).putLong(key).putInt(numFloor).putInt(0);
+        buffer.asLongBuffer().put(bits);
+        Path tmp = Files.createTempFile(cache.toAbsolutePath().getParent(), cache.getFileName().toString(), ".tmp");
+        try {
+            Files.write(tmp, buffer.array());
+            Files.move(tmp, cache, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+}
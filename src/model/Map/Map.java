@@ -6,24 +6,73 @@ import model.Exceptions.UnknownElementException;
 import model.Map.Occupant.Crate;
 import model.Map.Occupant.Player;
 import model.Map.Occupiable.DestTile;
-import model.Map.Occupiable.Occupiable;
 import model.Map.Occupiable.Tile;
 import viewmodel.LevelEditorCanvas;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 
 /**
- * A class holding a the 2D array of cells, representing the world map
+ * A class holding the world map. Walls, destinations and crates are stored as packed bitboards (see
+ * {@link BitBoard}) indexed by r * cols + c, so that moving around never allocates. The {@link Cell} objects
+ * returned by {@link #getCells()} are only a view built on request.
  */
 public class Map {
-    private Cell[][] cells;
-    private ArrayList<DestTile> destTiles = new ArrayList<>();
-    private ArrayList<Crate> crates = new ArrayList<>();
+    private static final Direction[] DIRECTIONS = Direction.values();
 
-    private Player player;
+    private int rows;
+    private int cols;
+
+    private long[] walls;
+    private long[] dests;
+    private long[] crates;
+    //squares from which a crate can never be pushed onto any destination
+    private long[] deadSquares;
+
+    private int playerPos;
+    private long hash;
+    private boolean lastMovePushed;
+    private int numDeadCrates;
+    private int numCrates;
+    private int numDests;
+    private int numFilledDests;
+
+    //net number of pushes since initialize, and the value it had when a freeze deadlock first appeared, or -1
+    private int numPushes;
+    private int frozenAtPush;
+    //scratch space of the freeze check: crates already visited are treated as walls
+    private long[] freezeMarks;
+    private int[] freezeStack;
+    private int freezeTop;
+    private boolean freezeOffDest;
+
+    private CorralDetector corralDetector;
+    //bumped whenever a crate moves; the corral check is cached until it changes
+    private int crateVersion;
+    private int corralCheckedVersion;
+    private boolean corralDeadlocked;
+
+    private DeadlockPatterns patterns;
+    private int numDeadPairs;
+
+    //player reachability, cached until a crate moves or the player leaves the filled region
+    private int[] reachStamp;
+    private int[] reachFrom;
+    private int[] reachQueue;
+    private int reachCurrent;
+    private int reachVersion;
+    private int reachRoot;
+    private int reachSize;
+    private int reachTopLeft;
+
+    //cells changed since the last takeChangedCells, as a set and in the order they changed
+    private long[] changedMarks;
+    private int[] changed;
+    private int numChanged;
 
     /**
-     * This function instantiates and initializes cells, destTiles, crates to the correct map elements (e.g. the # char
+     * This function instantiates and initializes the bitboards to the correct map elements (e.g. the # char
      * means a wall, @ the player, etc).
      *
      * @param rows The number of rows in the map
@@ -32,85 +81,560 @@ public class Map {
      * @throws InvalidMapException Throw the correct exception when necessary. There should only be 1 player.
      */
     public void initialize(int rows, int cols, char[][] rep) throws InvalidMapException {
-        cells = new Cell[rows][cols];
-        destTiles = new ArrayList<>();
-        crates = new ArrayList<>();
-        player = null;
-
+        startInitialize(rows, cols);
         for (int r = 0; r < rows; r++) {
             for (int c = 0; c < cols; c++) {
                 LevelEditorCanvas.Brush b = LevelEditorCanvas.Brush.fromChar(rep[r][c]);
                 if (b == null)
                     throw new UnknownElementException("Unknown char: " + rep[r][c]);
+                place(index(r, c), b);
+            }
+        }
+        finishInitialize();
+    }
 
-                switch (b) {
-                    case TILE:
-                        cells[r][c] = new Tile();
-                        break;
-                    case PLAYER_ON_TILE:
-                        if (player == null) {
-                            player = new Player(r, c);
-                            Tile t = new Tile();
-                            cells[r][c] = t;
-                            t.setOccupant(player);
-                        } else {
-                            throw new InvalidNumberOfPlayersException(">1 players found!");
-                        }
-                        break;
-                    case PLAYER_ON_DEST:
-                        if (player == null) {
-                            player = new Player(r, c);
-                            DestTile t = new DestTile();
-                            destTiles.add(t);
-                            cells[r][c] = t;
-                            t.setOccupant(player);
-                        } else {
-                            throw new InvalidNumberOfPlayersException(">1 players found!");
-                        }
-                        break;
-                    case CRATE_ON_TILE:
-                        Crate crate = new Crate(r, c);
-                        crates.add(crate);
-                        Tile t = new Tile();
-                        cells[r][c] = t;
-                        t.setOccupant(crate);
-                        break;
-                    case CRATE_ON_DEST:
-                        Crate crate2 = new Crate(r, c);
-                        crates.add(crate2);
-                        DestTile t2 = new DestTile();
-                        destTiles.add(t2);
-                        cells[r][c] = t2;
-                        t2.setOccupant(crate2);
-                        break;
-                    case WALL:
-                        cells[r][c] = new Wall();
-                        break;
-                    case DEST:
-                        DestTile d = new DestTile();
-                        cells[r][c] = d;
-                        destTiles.add(d);
-                        break;
-                }
+    /**
+     * Initializes the map from cells decoded one at a time, e.g. straight from the bytes of a map file while they
+     * are being validated, without going through a char array first.
+     *
+     * @param rows   The number of rows in the map
+     * @param cols   The number of columns in the map
+     * @param source Asked for every cell once, in row-major order
+     * @throws InvalidMapException when the source rejects a cell, or there is not exactly 1 player
+     */
+    public void initialize(int rows, int cols, CellSource source) throws InvalidMapException {
+        startInitialize(rows, cols);
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++) {
+                place(index(r, c), source.next(r, c));
             }
         }
+        finishInitialize();
+    }
+
+    /**
+     * Supplies the cells of a map to {@link #initialize(int, int, CellSource)}
+     */
+    public interface CellSource {
+        /**
+         * @param r The row of the cell
+         * @param c The column of the cell
+         * @return The element in the cell
+         * @throws InvalidMapException when the cell is missing or not a valid element
+         */
+        LevelEditorCanvas.Brush next(int r, int c) throws InvalidMapException;
+    }
+
+    private void startInitialize(int rows, int cols) {
+        this.rows = rows;
+        this.cols = cols;
+        walls = BitBoard.create(rows * cols);
+        dests = BitBoard.create(rows * cols);
+        crates = BitBoard.create(rows * cols);
+        playerPos = -1;
+    }
+
+    private void place(int pos, LevelEditorCanvas.Brush b) throws InvalidNumberOfPlayersException {
+        switch (b) {
+            case TILE:
+                break;
+            case PLAYER_ON_TILE:
+            case PLAYER_ON_DEST:
+                if (playerPos != -1)
+                    throw new InvalidNumberOfPlayersException(">1 players found!");
+                playerPos = pos;
+                if (b == LevelEditorCanvas.Brush.PLAYER_ON_DEST)
+                    BitBoard.set(dests, pos);
+                break;
+            case CRATE_ON_TILE:
+                BitBoard.set(crates, pos);
+                break;
+            case CRATE_ON_DEST:
+                BitBoard.set(crates, pos);
+                BitBoard.set(dests, pos);
+                break;
+            case WALL:
+                BitBoard.set(walls, pos);
+                break;
+            case DEST:
+                BitBoard.set(dests, pos);
+                break;
+        }
+    }
 
-        if (null == player)
+    /**
+     * Computes everything derived from the cells once they are all placed
+     */
+    private void finishInitialize() throws InvalidNumberOfPlayersException {
+        if (playerPos == -1)
             throw new InvalidNumberOfPlayersException("0 players found!");
+
+        hash = Zobrist.hashCrates(crates) ^ Zobrist.playerKey(playerPos);
+        numCrates = BitBoard.count(crates);
+        numDests = BitBoard.count(dests);
+        numFilledDests = 0;
+        for (int pos = BitBoard.next(dests, 0); pos != -1; pos = BitBoard.next(dests, pos + 1)) {
+            if (hasCrate(pos))
+                numFilledDests++;
+        }
+        computeDeadSquares();
+
+        corralDetector = new CorralDetector(rows, cols, walls, dests, deadSquares);
+        crateVersion = 0;
+        corralCheckedVersion = -1;
+        patterns = DeadlockPatterns.NONE;
+        numDeadPairs = 0;
+
+        reachStamp = new int[rows * cols];
+        reachFrom = new int[rows * cols];
+        reachQueue = new int[rows * cols];
+        reachCurrent = 0;
+        reachVersion = -1;
+
+        changedMarks = BitBoard.create(rows * cols);
+        changed = new int[rows * cols];
+        numChanged = 0;
+
+        numPushes = 0;
+        frozenAtPush = -1;
+        freezeMarks = BitBoard.create(rows * cols);
+        freezeStack = new int[numCrates];
+        for (int pos = BitBoard.next(crates, 0); pos != -1; pos = BitBoard.next(crates, pos + 1)) {
+            if (createsFreezeDeadlock(pos)) {
+                frozenAtPush = 0;
+                break;
+            }
+        }
+    }
+
+    /**
+     * Marks every square from which a lone crate can never reach a destination, by pulling crates backwards from
+     * all destinations at once: a crate at x can come from y = x + d if y is free and the player can stand at
+     * y + d to push it. Any square the pulls do not reach is dead. Dead squares are only meaningful when every
+     * crate must end on a destination, so none are marked if the crate and destination counts differ.
+     */
+    private void computeDeadSquares() {
+        deadSquares = BitBoard.create(rows * cols);
+        numDeadCrates = 0;
+        if (numCrates != numDests)
+            return;
+
+        long[] live = BitBoard.create(rows * cols);
+        int[] queue = new int[rows * cols];
+        int head = 0;
+        int tail = 0;
+        for (int pos = BitBoard.next(dests, 0); pos != -1; pos = BitBoard.next(dests, pos + 1)) {
+            BitBoard.set(live, pos);
+            queue[tail++] = pos;
+        }
+        while (head < tail) {
+            int x = queue[head++];
+            for (Direction d : DIRECTIONS) {
+                int y = step(x, d);
+                if (y == -1 || isWall(y) || BitBoard.get(live, y))
+                    continue;
+                int z = step(y, d);
+                if (z == -1 || isWall(z))
+                    continue;
+                BitBoard.set(live, y);
+                queue[tail++] = y;
+            }
+        }
+
+        for (int pos = 0; pos < rows * cols; pos++) {
+            if (!isWall(pos) && !BitBoard.get(live, pos)) {
+                BitBoard.set(deadSquares, pos);
+                if (hasCrate(pos))
+                    numDeadCrates++;
+            }
+        }
+    }
+
+    /**
+     * @param pos A position inside the map
+     * @param d   The direction to step in
+     * @return The neighbouring position in the direction, or -1 if it is out of bounds
+     */
+    private int step(int pos, Direction d) {
+        int r = pos / cols + d.getDR();
+        int c = pos % cols + d.getDC();
+        return isValid(r, c) ? index(r, c) : -1;
+    }
+
+    public int getRows() {
+        return rows;
     }
 
+    public int getCols() {
+        return cols;
+    }
+
+    /**
+     * @param r The row coordinate
+     * @param c The column coordinate
+     * @return The position of the cell inside the bitboards
+     */
+    public int index(int r, int c) {
+        return r * cols + c;
+    }
+
+    public int getPlayerPos() {
+        return playerPos;
+    }
+
+    public int getPlayerR() {
+        return playerPos / cols;
+    }
+
+    public int getPlayerC() {
+        return playerPos % cols;
+    }
+
+    /**
+     * @return The Zobrist hash of the crate and player positions, see {@link Zobrist}
+     */
+    public long stateHash() {
+        return hash;
+    }
+
+    /**
+     * @param pos A position inside the map
+     * @return Whether the position is a wall
+     */
+    public boolean isWall(int pos) {
+        return BitBoard.get(walls, pos);
+    }
+
+    /**
+     * @param pos A position inside the map
+     * @return Whether the position is a destination
+     */
+    public boolean isDest(int pos) {
+        return BitBoard.get(dests, pos);
+    }
+
+    /**
+     * @param pos A position inside the map
+     * @return Whether a crate is on the position
+     */
+    public boolean hasCrate(int pos) {
+        return BitBoard.get(crates, pos);
+    }
+
+    /**
+     * @return The number of crates
+     */
+    public int getNumCrates() {
+        return numCrates;
+    }
+
+    /**
+     * @return The number of destinations
+     */
+    public int getNumDests() {
+        return numDests;
+    }
+
+    /**
+     * @return The number of destinations with a crate on them. Kept up to date on every push, so this is O(1).
+     */
+    public int getNumFilledDests() {
+        return numFilledDests;
+    }
+
+    /**
+     * @return Whether every destination has a crate on it
+     */
+    public boolean isSolved() {
+        return numFilledDests == numDests;
+    }
+
+    /**
+     * @param pos A position inside the map
+     * @return Whether a crate on the position can never reach a destination
+     */
+    public boolean isDeadSquare(int pos) {
+        return BitBoard.get(deadSquares, pos);
+    }
+
+    /**
+     * @return Whether some crate stands on a dead square, see {@link #isDeadSquare(int)}. Kept up to date on every
+     * push, so this is O(1).
+     */
+    public boolean hasDeadCrate() {
+        return numDeadCrates > 0;
+    }
+
+    /**
+     * @return Whether some crates are frozen, i.e. can never move again, and not all of them are on destinations.
+     * Kept up to date on every push, so this is O(1).
+     */
+    public boolean hasFreezeDeadlock() {
+        return frozenAtPush != -1;
+    }
+
+    /**
+     * Sets the two-crate deadlock patterns of the level and counts the deadlocked pairs of the current state. The
+     * count is kept up to date on every push from then on.
+     *
+     * @param patterns The patterns computed for the walls and destinations of this map
+     */
+    public void setDeadlockPatterns(DeadlockPatterns patterns) {
+        this.patterns = patterns;
+        numDeadPairs = 0;
+        for (int pos = BitBoard.next(crates, 0); pos != -1; pos = BitBoard.next(crates, pos + 1)) {
+            for (int other = BitBoard.next(crates, pos + 1); other != -1; other = BitBoard.next(crates, other + 1)) {
+                if (patterns.isDeadlocked(pos, other, playerPos))
+                    numDeadPairs++;
+            }
+        }
+    }
+
+    /**
+     * @return Whether some pair of crates matches a deadlock pattern, see {@link DeadlockPatterns}. Kept up to date
+     * on every push in O(crates), so this is O(1).
+     */
+    public boolean hasPatternDeadlock() {
+        return numDeadPairs > 0;
+    }
+
+    /**
+     * Looks for corral deadlocks with a {@link CorralDetector}. Walking around never changes which areas the
+     * player can reach, so the result is cached until a crate moves.
+     *
+     * @return Whether some area fenced off by crates can provably never be opened nor solved
+     */
+    public boolean hasCorralDeadlock() {
+        if (corralCheckedVersion != crateVersion) {
+            corralDeadlocked = numCrates == numDests
+                    && corralDetector.isDeadlocked(crates, playerPos);
+            corralCheckedVersion = crateVersion;
+        }
+        return corralDeadlocked;
+    }
+
+    /**
+     * Flood fills the squares the player can walk to without pushing, unless the last fill is still valid. Walking
+     * never leaves a region, so a fill stays valid until a crate moves.
+     *
+     * @param fromPlayer Whether the fill must be rooted at the player, as needed to trace paths back to it
+     */
+    private void updateReach(boolean fromPlayer) {
+        if (reachVersion == crateVersion && (!fromPlayer || reachRoot == playerPos))
+            return;
+        if (++reachCurrent == 0) {
+            Arrays.fill(reachStamp, 0);
+            reachCurrent = 1;
+        }
+        int head = 0;
+        int tail = 0;
+        reachStamp[playerPos] = reachCurrent;
+        reachFrom[playerPos] = -1;
+        reachQueue[tail++] = playerPos;
+        reachTopLeft = playerPos;
+        while (head < tail) {
+            int x = reachQueue[head++];
+            for (Direction d : DIRECTIONS) {
+                int y = step(x, d);
+                if (y != -1 && reachStamp[y] != reachCurrent && !isWall(y) && !hasCrate(y)) {
+                    reachStamp[y] = reachCurrent;
+                    reachFrom[y] = x;
+                    reachQueue[tail++] = y;
+                    reachTopLeft = Math.min(reachTopLeft, y);
+                }
+            }
+        }
+        reachSize = tail;
+        reachVersion = crateVersion;
+        reachRoot = playerPos;
+    }
+
+    /**
+     * @param pos A position inside the map
+     * @return Whether the player can walk to the position without pushing a crate
+     */
+    public boolean isReachable(int pos) {
+        updateReach(false);
+        return reachStamp[pos] == reachCurrent;
+    }
+
+    /**
+     * @return The number of squares the player can walk to without pushing a crate, including its own
+     */
+    public int getReachableCount() {
+        updateReach(false);
+        return reachSize;
+    }
+
+    /**
+     * States which only differ by where the player stands inside the same region are the same state for a search.
+     *
+     * @return The top-left (smallest) position the player can walk to, which identifies its region
+     */
+    public int getNormalizedPlayerPos() {
+        updateReach(false);
+        return reachTopLeft;
+    }
+
+    /**
+     * @return Every push the player can make from the current state, i.e. pushes of a crate whose back is
+     * reachable and whose front is neither a wall nor a crate
+     */
+    public ArrayList<Push> getLegalPushes() {
+        updateReach(false);
+        ArrayList<Push> pushes = new ArrayList<>();
+        for (int pos = BitBoard.next(crates, 0); pos != -1; pos = BitBoard.next(crates, pos + 1)) {
+            for (Direction d : DIRECTIONS) {
+                int behind = step(pos, d.opposite());
+                int target = step(pos, d);
+                if (behind != -1 && reachStamp[behind] == reachCurrent && target != -1 && !isWall(target)
+                        && !hasCrate(target))
+                    pushes.add(new Push(pos, behind, d));
+            }
+        }
+        return pushes;
+    }
+
+    /**
+     * @param pos A position inside the map
+     * @return The moves of a shortest walk of the player to the position without pushing, or null if it cannot
+     * be reached
+     */
+    public ArrayList<Direction> pathTo(int pos) {
+        updateReach(true);
+        if (reachStamp[pos] != reachCurrent)
+            return null;
+        ArrayList<Direction> path = new ArrayList<>();
+        for (int x = pos; reachFrom[x] != -1; x = reachFrom[x]) {
+            int delta = x - reachFrom[x];
+            for (Direction d : DIRECTIONS) {
+                if (d.getDR() * cols + d.getDC() == delta) {
+                    path.add(d);
+                    break;
+                }
+            }
+        }
+        Collections.reverse(path);
+        return path;
+    }
+
+    /**
+     * Checks whether the crate is frozen and takes part in a freeze deadlock. A crate is blocked along an axis if
+     * a wall or an already visited crate is on either side, if both sides are dead squares, or if a crate on
+     * either side is itself frozen. A crate blocked along both axes is frozen. Only the crate and the crates
+     * around it are visited, so the check is cheap enough to run after every push.
+     *
+     * @param pos The position of a crate
+     * @return Whether the crate is frozen together with a crate which is not on a destination
+     */
+    private boolean createsFreezeDeadlock(int pos) {
+        if (numCrates != numDests)
+            return false;
+        freezeOffDest = false;
+        boolean frozen = isFrozen(pos);
+        while (freezeTop > 0) {
+            BitBoard.clear(freezeMarks, freezeStack[--freezeTop]);
+        }
+        return frozen && freezeOffDest;
+    }
+
+    private boolean isFrozen(int pos) {
+        BitBoard.set(freezeMarks, pos);
+        freezeStack[freezeTop++] = pos;
+        boolean frozen = isBlocked(pos, Direction.LEFT, Direction.RIGHT)
+                && isBlocked(pos, Direction.UP, Direction.DOWN);
+        if (frozen && !isDest(pos))
+            freezeOffDest = true;
+        return frozen;
+    }
+
+    private boolean isBlocked(int pos, Direction a, Direction b) {
+        int na = step(pos, a);
+        int nb = step(pos, b);
+        if (isFreezeBlocker(na) || isFreezeBlocker(nb))
+            return true;
+        if (isDeadSquare(na) && isDeadSquare(nb))
+            return true;
+        return (hasCrate(na) && isFrozen(na)) || (hasCrate(nb) && isFrozen(nb));
+    }
+
+    private boolean isFreezeBlocker(int pos) {
+        return pos == -1 || isWall(pos) || BitBoard.get(freezeMarks, pos);
+    }
+
+    /**
+     * @return A view of the destination tiles, built on request and in row-major order
+     */
     public ArrayList<DestTile> getDestTiles() {
+        ArrayList<DestTile> destTiles = new ArrayList<>();
+        for (int pos = BitBoard.next(dests, 0); pos != -1; pos = BitBoard.next(dests, pos + 1)) {
+            DestTile t = new DestTile();
+            if (hasCrate(pos))
+                t.setOccupant(new Crate(pos / cols, pos % cols));
+            else if (pos == playerPos)
+                t.setOccupant(new Player(pos / cols, pos % cols));
+            destTiles.add(t);
+        }
         return destTiles;
     }
 
+    /**
+     * @return A view of the crates, built on request and in row-major order
+     */
     public ArrayList<Crate> getCrates() {
-        return crates;
+        ArrayList<Crate> list = new ArrayList<>();
+        for (int pos = BitBoard.next(crates, 0); pos != -1; pos = BitBoard.next(crates, pos + 1)) {
+            list.add(new Crate(pos / cols, pos % cols));
+        }
+        return list;
     }
 
+    /**
+     * @return A view of the map as cells, built on request. Modifying it does not modify the map.
+     */
     public Cell[][] getCells() {
+        Cell[][] cells = new Cell[rows][cols];
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++) {
+                int pos = index(r, c);
+                if (isWall(pos)) {
+                    cells[r][c] = new Wall();
+                    continue;
+                }
+                Tile t = isDest(pos) ? new DestTile() : new Tile();
+                if (hasCrate(pos))
+                    t.setOccupant(new Crate(r, c));
+                else if (pos == playerPos)
+                    t.setOccupant(new Player(r, c));
+                cells[r][c] = t;
+            }
+        }
         return cells;
     }
 
+    /**
+     * Returns the cells changed by the moves and undos since the last call, so that only those need to be rendered
+     * again; the map as a whole has to be rendered after it is initialized. A cell is listed once however often it
+     * changed.
+     *
+     * @return The positions of the changed cells, indexed as by {@link #index(int, int)}
+     */
+    public int[] takeChangedCells() {
+        int[] result = Arrays.copyOf(changed, numChanged);
+        for (int pos : result) {
+            BitBoard.clear(changedMarks, pos);
+        }
+        numChanged = 0;
+        return result;
+    }
+
+    private void markChanged(int pos) {
+        if (!BitBoard.get(changedMarks, pos)) {
+            BitBoard.set(changedMarks, pos);
+            changed[numChanged++] = pos;
+        }
+    }
+
     /**
      * Attempts to move the player in the specified direction. Note that the player only has the strength to push
      * one crate. It cannot push 2 or more crates simultaneously.
@@ -119,93 +643,135 @@ public class Map {
      * @return Whether the move was successful
      */
     public boolean movePlayer(Direction d) {
-        int curR = player.getR();
-        int curC = player.getC();
+        int newR = getPlayerR() + d.getDR();
+        int newC = getPlayerC() + d.getDC();
+
+        if (!isValid(newR, newC))
+            return false;
 
-        int newR = curR;
-        int newC = curC;
+        int newPos = index(newR, newC);
+        if (isWall(newPos))
+            return false;
+        boolean pushed = hasCrate(newPos);
+        if (pushed && !moveCrate(newR, newC, d))
+            return false;
 
-        switch (d) {
-            case UP:
-                newR--;
-                break;
-            case DOWN:
-                newR++;
-                break;
-            case LEFT:
-                newC--;
-                break;
-            case RIGHT:
-                newC++;
-                break;
-        }
+        lastMovePushed = pushed;
+        hash ^= Zobrist.playerKey(playerPos) ^ Zobrist.playerKey(newPos);
+        markChanged(playerPos);
+        markChanged(newPos);
+        playerPos = newPos;
+        return true;
+    }
 
-        if (isValid(newR, newC)) {
-            if (isOccupiableAndNotOccupiedWithCrate(newR, newC)) {
-                ((Occupiable) cells[curR][curC]).removeOccupant();
-                ((Occupiable) cells[newR][newC]).setOccupant(player);
-                player.setPos(newR, newC);
-                return true;
-            } else if (cells[newR][newC] instanceof Occupiable) {
-                if (moveCrate((Crate) ((Occupiable) cells[newR][newC]).getOccupant().get(), d)) {
-                    ((Occupiable) cells[curR][curC]).removeOccupant();
-                    ((Occupiable) cells[newR][newC]).setOccupant(player);
-                    player.setPos(newR, newC);
-                    return true;
-                }
-            }
+    /**
+     * @return Whether the last successful {@link #movePlayer(Direction)} pushed a crate
+     */
+    public boolean lastMovePushed() {
+        return lastMovePushed;
+    }
+
+    /**
+     * Reverts a successful {@link #movePlayer(Direction)}: steps the player back against the direction, and if the
+     * move pushed a crate, pulls that crate back along.
+     *
+     * @param d      The direction of the move to revert
+     * @param pushed Whether the move pushed a crate
+     */
+    public void undoMove(Direction d, boolean pushed) {
+        int delta = d.getDR() * cols + d.getDC();
+        int prevPos = playerPos - delta;
+        if (pushed) {
+            int cratePos = playerPos + delta;
+            updateDeadPairs(cratePos, playerPos, -1);
+            BitBoard.clear(crates, cratePos);
+            BitBoard.set(crates, playerPos);
+            hash ^= Zobrist.crateKey(cratePos) ^ Zobrist.crateKey(playerPos);
+            updateCrateCounts(cratePos, playerPos);
+            updateDeadPairs(playerPos, prevPos, 1);
+            markChanged(cratePos);
+            crateVersion++;
+            if (frozenAtPush == numPushes)
+                frozenAtPush = -1;
+            numPushes--;
         }
-        return false;
+        hash ^= Zobrist.playerKey(playerPos) ^ Zobrist.playerKey(prevPos);
+        markChanged(playerPos);
+        markChanged(prevPos);
+        playerPos = prevPos;
     }
 
     /**
      * Attempts to move the crate into the specified direction by 1 cell. Will only succeed if the destination
-     * implements the occupiable interface and is not currently occupied.
+     * is not a wall and is not currently occupied by another crate.
      *
-     * @param c The crate to be moved
+     * @param r The row of the crate to be moved
+     * @param c The column of the crate to be moved
      * @param d The desired direction to move the crate in
      * @return Whether or not the move was successful
      */
-    private boolean moveCrate(Crate c, Direction d) {
-        int curR = c.getR();
-        int curC = c.getC();
-
-        int newR = curR;
-        int newC = curC;
-
-        switch (d) {
-            case UP:
-                newR--;
-                break;
-            case DOWN:
-                newR++;
-                break;
-            case LEFT:
-                newC--;
-                break;
-            case RIGHT:
-                newC++;
-                break;
-        }
+    private boolean moveCrate(int r, int c, Direction d) {
+        int newR = r + d.getDR();
+        int newC = c + d.getDC();
 
         if (isOccupiableAndNotOccupiedWithCrate(newR, newC)) {
-            ((Occupiable) cells[curR][curC]).removeOccupant();
-            ((Occupiable) cells[newR][newC]).setOccupant(c);
-            c.setPos(newR, newC);
+            int pos = index(r, c);
+            int newPos = index(newR, newC);
+            updateDeadPairs(pos, playerPos, -1);
+            BitBoard.clear(crates, pos);
+            BitBoard.set(crates, newPos);
+            hash ^= Zobrist.crateKey(pos) ^ Zobrist.crateKey(newPos);
+            updateCrateCounts(pos, newPos);
+            updateDeadPairs(newPos, pos, 1);
+            markChanged(newPos);
+            crateVersion++;
+            numPushes++;
+            //frozen crates never move again, so once a freeze deadlock appears it lasts until this push is undone
+            if (frozenAtPush == -1 && createsFreezeDeadlock(newPos))
+                frozenAtPush = numPushes;
             return true;
         } else {
             return false;
         }
     }
 
+    private void updateCrateCounts(int from, int to) {
+        if (isDeadSquare(from))
+            numDeadCrates--;
+        if (isDeadSquare(to))
+            numDeadCrates++;
+        if (isDest(from))
+            numFilledDests--;
+        if (isDest(to))
+            numFilledDests++;
+    }
+
+    /**
+     * Adds or removes the deadlocked pairs a crate takes part in. Whether a pair is deadlocked only depends on the
+     * two crates and the squares the player can reach without them, and neither walking nor pushing other crates
+     * changes those, so only pairs with the pushed crate need to be counted again.
+     *
+     * @param crate  The position of the crate
+     * @param player The position of the player
+     * @param sign   1 to add the pairs, -1 to remove them
+     */
+    private void updateDeadPairs(int crate, int player, int sign) {
+        if (patterns == DeadlockPatterns.NONE)
+            return;
+        for (int pos = BitBoard.next(crates, 0); pos != -1; pos = BitBoard.next(crates, pos + 1)) {
+            if (pos != crate && patterns.isDeadlocked(crate, pos, player))
+                numDeadPairs += sign;
+        }
+    }
+
     private boolean isValid(int r, int c) {
-        return r >= 0 && r < cells.length && c >= 0 && c < cells[0].length;
+        return r >= 0 && r < rows && c >= 0 && c < cols;
     }
 
     /**
      * @param r The row coordinate
      * @param c The column coordinate
-     * @return Whether or not the specified location on the grid is a location which implements Occupiable,
+     * @return Whether or not the specified location on the grid is a location which is not a wall,
      * yet does not currently have a crate in it. Will return false if out of bounds.
      */
     public boolean isOccupiableAndNotOccupiedWithCrate(int r, int c) {
@@ -213,12 +779,78 @@ public class Map {
             return false;
         }
 
-        return cells[r][c] instanceof Occupiable &&
-                (!((Occupiable) cells[r][c]).getOccupant().isPresent()
-                        || !(((Occupiable) cells[r][c]).getOccupant().get() instanceof Crate));
+        int pos = index(r, c);
+        return !isWall(pos) && !hasCrate(pos);
     }
 
     public enum Direction {
-        UP, DOWN, LEFT, RIGHT
+        UP(-1, 0), DOWN(1, 0), LEFT(0, -1), RIGHT(0, 1);
+
+        private final int dr;
+        private final int dc;
+
+        Direction(int dr, int dc) {
+            this.dr = dr;
+            this.dc = dc;
+        }
+
+        public int getDR() {
+            return dr;
+        }
+
+        public int getDC() {
+            return dc;
+        }
+
+        /**
+         * @param c    A move character
+         * @param wasd Whether the character is in wasd notation instead of LURD notation (u, d, l, r; uppercase
+         *             marks a push and is treated the same)
+         * @return The direction of the move, or null if the character is not a move
+         */
+        public static Direction fromMove(char c, boolean wasd) {
+            if (wasd) {
+                switch (c) {
+                    case 'w':
+                        return UP;
+                    case 'a':
+                        return LEFT;
+                    case 's':
+                        return DOWN;
+                    case 'd':
+                        return RIGHT;
+                    default:
+                        return null;
+                }
+            }
+            switch (Character.toLowerCase(c)) {
+                case 'u':
+                    return UP;
+                case 'l':
+                    return LEFT;
+                case 'd':
+                    return DOWN;
+                case 'r':
+                    return RIGHT;
+                default:
+                    return null;
+            }
+        }
+
+        /**
+         * @return The direction pointing the other way
+         */
+        public Direction opposite() {
+            switch (this) {
+                case UP:
+                    return DOWN;
+                case DOWN:
+                    return UP;
+                case LEFT:
+                    return RIGHT;
+                default:
+                    return LEFT;
+            }
+        }
     }
 }
@@ -0,0 +1,39 @@
+package model.Map;
+
+/**
+ * A crate push the player can make from the current state of a {@link Map}: walk to the square behind the crate
+ * without pushing anything, then push the crate one cell in the direction.
+ */
+public class Push {
+    private final int cratePos;
+    private final int playerPos;
+    private final Map.Direction direction;
+
+    /**
+     * @param cratePos  The position of the crate before the push
+     * @param playerPos The position the player pushes from
+     * @param direction The direction of the push
+     */
+    public Push(int cratePos, int playerPos, Map.Direction direction) {
+        this.cratePos = cratePos;
+        this.playerPos = playerPos;
+        this.direction = direction;
+    }
+
+    public int getCratePos() {
+        return cratePos;
+    }
+
+    public int getPlayerPos() {
+        return playerPos;
+    }
+
+    public Map.Direction getDirection() {
+        return direction;
+    }
+
+    @Override
+    public String toString() {
+        return "Push " + cratePos + " " + direction;
+    }
+}
@@ -0,0 +1,53 @@
+package model.Map;
+
+/**
+ * Zobrist keys for board states. The hash of a state is the XOR of the key of every crate position and the key of
+ * the player position, so it can be updated in O(1) when a single crate or the player changes cells.
+ * <p>
+ * Keys are derived from the position with a fixed mixing function instead of a random table, so the same board
+ * always hashes to the same value, across maps and across runs.
+ */
+public final class Zobrist {
+    private static final long CRATE_SEED = 0x9E3779B97F4A7C15L;
+    private static final long PLAYER_SEED = 0xC2B2AE3D27D4EB4FL;
+
+    private Zobrist() {
+    }
+
+    /**
+     * @param pos A position inside the map
+     * @return The key of a crate on the position
+     */
+    public static long crateKey(int pos) {
+        return mix(CRATE_SEED * (pos + 1));
+    }
+
+    /**
+     * @param pos A position inside the map
+     * @return The key of the player on the position
+     */
+    public static long playerKey(int pos) {
+        return mix(PLAYER_SEED * (pos + 1));
+    }
+
+    /**
+     * @param crates The bitboard of crate positions
+     * @return The XOR of the keys of all crates on the board
+     */
+    public static long hashCrates(long[] crates) {
+        long h = 0;
+        for (int pos = BitBoard.next(crates, 0); pos != -1; pos = BitBoard.next(crates, pos + 1)) {
+            h ^= crateKey(pos);
+        }
+        return h;
+    }
+
+    /**
+     * The finalizer of SplitMix64, which spreads every input bit across the whole output
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
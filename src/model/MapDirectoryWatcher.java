@@ -0,0 +1,101 @@
+package model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Watches a map directory on a daemon thread and reports the files created, modified or deleted in it in batches.
+ * <p>
+ * Events are collected until none has arrived for {@link #DEBOUNCE_MS}, or at most for {@link #MAX_DELAY_MS} while
+ * events keep coming, so copying hundreds of files into the directory is reported once rather than file by file.
+ * <p>
+ * Files may have changed before watching started, so the watcher first reports that the whole directory has to be
+ * checked. That check then runs on the watcher thread rather than on the caller's.
+ */
+public class MapDirectoryWatcher implements Closeable {
+    /**
+     * How long the directory has to be quiet before a batch is reported, in milliseconds
+     */
+    public static final long DEBOUNCE_MS = 300;
+    /**
+     * The longest a batch is held back while events keep coming, in milliseconds
+     */
+    public static final long MAX_DELAY_MS = 2000;
+
+    private final WatchService service;
+    private final Consumer<Set<String>> listener;
+    private final Thread thread;
+
+    /**
+     * Starts watching the directory
+     *
+     * @param directory The directory to watch
+     * @param listener  Called on the watcher thread with the names of the changed files of every batch, or with null
+     *                  if events were lost and the whole directory has to be checked
+     * @throws IOException when the directory cannot be watched
+     */
+    public MapDirectoryWatcher(Path directory, Consumer<Set<String>> listener) throws IOException {
+        this.service = FileSystems.getDefault().newWatchService();
+        this.listener = listener;
+        try {
+            directory.register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_DELETE);
+        } catch (IOException e) {
+            service.close();
+            throw e;
+        }
+        thread = new Thread(this::run, "map-directory-watcher");
+        thread.setDaemon(true); //so application exits when Platform.exit is called
+        thread.start();
+    }
+
+    /**
+     * Stops watching. No batch is reported after this returns, except one already being reported.
+     */
+    @Override
+    public void close() throws IOException {
+        service.close();
+        thread.interrupt();
+    }
+
+    private void run() {
+        listener.accept(null);
+        try {
+            boolean valid = true;
+            while (valid) {
+                WatchKey key = service.take();
+                Set<String> changed = new HashSet<>();
+                boolean overflow = false;
+                long deadline = System.currentTimeMillis() + MAX_DELAY_MS;
+                while (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW)
+                            overflow = true;
+                        else
+                            changed.add(event.context().toString());
+                    }
+                    //the key is invalid once the directory is gone; report what was seen and stop
+                    valid = key.reset();
+                    long wait = Math.min(DEBOUNCE_MS, deadline - System.currentTimeMillis());
+                    key = valid && wait > 0 ? service.poll(wait, TimeUnit.MILLISECONDS) : null;
+                }
+                if (Thread.currentThread().isInterrupted())
+                    return;
+                listener.accept(overflow ? null : changed);
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            //closed
+        }
+    }
+}
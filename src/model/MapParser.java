@@ -0,0 +1,190 @@
+package model;
+
+import model.Exceptions.InvalidMapException;
+import model.Exceptions.InvalidNumberOfPlayersException;
+import model.Exceptions.MapFormatException;
+import model.Exceptions.UnknownElementException;
+import model.Exceptions.UnreadableMapException;
+import model.Map.Map;
+import viewmodel.LevelEditorCanvas;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Parses map files at the byte level. A map file holds the number of rows and the number of columns, then one line
+ * per row with one char per cell (see {@link LevelEditorCanvas.Brush}); chars past the last column are ignored.
+ * <p>
+ * The file is read in one go through a single channel, or memory-mapped if it is large, and every cell is
+ * validated and decoded straight from its bytes into the {@link Map} in one pass, without going through strings or
+ * char arrays. Errors report the line and column of the map file they were found at; the number of players is
+ * checked by the {@link Map} itself, and the parser only adds where the extra player is.
+ */
+public final class MapParser {
+    /**
+     * Files at least this large are memory-mapped instead of read onto the heap
+     */
+    public static final long MAP_THRESHOLD = 1 << 20;
+    //a map larger than this in either dimension is taken as a corrupt header
+    private static final int MAX_SIZE = 1 << 12;
+
+    private MapParser() {
+    }
+
+    /**
+     * @param file The map file
+     * @return The initialized map
+     * @throws InvalidMapException when the file cannot be read or the map is invalid
+     */
+    public static Map parse(Path file) throws InvalidMapException {
+        return parse(read(file));
+    }
+
+    /**
+     * @param file A file
+     * @return The contents of the file, memory-mapped if it is at least {@link #MAP_THRESHOLD} bytes
+     * @throws UnreadableMapException when the file cannot be read
+     */
+    public static ByteBuffer read(Path file) throws UnreadableMapException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size >= MAP_THRESHOLD)
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            ByteBuffer data = ByteBuffer.allocate((int) size);
+            while (data.hasRemaining() && channel.read(data) != -1) {
+                //a file may come in several reads
+            }
+            data.flip();
+            return data;
+        } catch (IOException e) {
+            throw new UnreadableMapException("Cannot read " + file + ": " + e, e);
+        }
+    }
+
+    /**
+     * Parses the map held from the position to the limit of the buffer. Only absolute reads are made, so the
+     * position of the buffer is not changed and the buffer can be shared.
+     *
+     * @param data The bytes of a map file
+     * @return The initialized map
+     * @throws InvalidMapException when the map is invalid
+     */
+    public static Map parse(ByteBuffer data) throws InvalidMapException {
+        Cursor cursor = new Cursor(data);
+        int rows = cursor.readSize("number of rows");
+        int cols = cursor.readSize("number of columns");
+        cursor.nextLine();
+
+        Map map = new Map();
+        try {
+            map.initialize(rows, cols, (r, c) -> cursor.readCell(rows, cols, r, c));
+        } catch (InvalidNumberOfPlayersException e) {
+            //the map rejects a second player as soon as it is placed, which is right after the cursor read it
+            if (cursor.playerLine == 0)
+                throw e;
+            throw new InvalidNumberOfPlayersException(e.getMessage() + " (line " + cursor.playerLine + ", column "
+                    + cursor.playerColumn + ")");
+        }
+        return map;
+    }
+
+    /**
+     * A read position in the bytes of a map file, which keeps track of the line it is on
+     */
+    private static final class Cursor {
+        final ByteBuffer data;
+        final int limit;
+        int pos;
+        int line = 1;
+        int lineStart;
+        //where the last player was read, or line 0 if none was
+        int playerLine;
+        int playerColumn;
+
+        Cursor(ByteBuffer data) {
+            this.data = data;
+            this.limit = data.limit();
+            this.pos = data.position();
+            this.lineStart = pos;
+        }
+
+        boolean atEnd() {
+            return pos >= limit;
+        }
+
+        /**
+         * @return The byte at the position, or -1 at the end
+         */
+        int peek() {
+            return pos < limit ? data.get(pos) & 0xFF : -1;
+        }
+
+        /**
+         * Skips whitespace, including line breaks, then reads a positive number
+         */
+        int readSize(String what) throws MapFormatException {
+            while (peek() == ' ' || peek() == '\t' || peek() == '\r' || peek() == '\n') {
+                if (peek() == '\n')
+                    startLine(pos + 1);
+                pos++;
+            }
+            int value = 0;
+            int start = pos;
+            while (peek() >= '0' && peek() <= '9' && value <= MAX_SIZE) {
+                value = value * 10 + (peek() - '0');
+                pos++;
+            }
+            if (pos == start || value == 0 || value > MAX_SIZE)
+                throw new MapFormatException("Expected the " + what + " as a number from 1 to " + MAX_SIZE, line,
+                        start - lineStart + 1);
+            return value;
+        }
+
+        /**
+         * Validates the cell at the position and moves past it, moving to the next line first at the start of
+         * every row but the first
+         */
+        LevelEditorCanvas.Brush readCell(int rows, int cols, int r, int c) throws InvalidMapException {
+            if (c == 0) {
+                if (r > 0)
+                    nextLine();
+                if (atEnd())
+                    throw new MapFormatException("Expected " + rows + " rows, found " + r, line, 1);
+            }
+            int b = peek();
+            if (b == -1 || b == '\n' || b == '\r')
+                throw new MapFormatException("Row " + (r + 1) + " has " + c + " columns, expected " + cols, line,
+                        c + 1);
+            LevelEditorCanvas.Brush brush = LevelEditorCanvas.Brush.fromChar((char) b);
+            if (brush == null)
+                throw new UnknownElementException("Unknown char: " + (char) b + " (line " + line + ", column "
+                        + (c + 1) + ")");
+            if (brush == LevelEditorCanvas.Brush.PLAYER_ON_TILE || brush == LevelEditorCanvas.Brush.PLAYER_ON_DEST) {
+                playerLine = line;
+                playerColumn = c + 1;
+            }
+            pos++;
+            return brush;
+        }
+
+        /**
+         * Moves to the start of the next line
+         */
+        void nextLine() {
+            while (pos < limit && data.get(pos) != '\n') {
+                pos++;
+            }
+            if (pos < limit)
+                startLine(pos + 1);
+            pos = Math.min(pos + 1, limit);
+        }
+
+        private void startLine(int start) {
+            line++;
+            lineStart = start;
+        }
+    }
+}
@@ -0,0 +1,309 @@
+package model.solver;
+
+import model.Map.Map;
+import model.Map.Zobrist;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * A meet-in-the-middle solver. A backward search pulls crates from the solved state, starting with every crate on a
+ * goal and the player in each region left free, breadth-first and one whole layer at a time. Every state it has
+ * seen after D layers is within D pulls of being solved, and its exact number of pushes to go is known; every other
+ * state needs at least D + 1 more pushes.
+ * <p>
+ * A forward A* search pushes crates from the start, guided by that perimeter: its heuristic is the exact distance
+ * inside the perimeter, and outside the larger of D + 1 and the matching lower bound of {@link Solver}. Both are
+ * admissible and their combination is consistent, so the first perimeter state taken from the open list joins with
+ * the backward path into a push-optimal solution.
+ * <p>
+ * The two sides take turns with a doubling budget: the backward search grows the perimeter until it has expanded
+ * as many states as the budget, then the forward search goes on with the new perimeter until it has expanded as
+ * many, and the budget doubles if neither finished. A larger perimeter only raises the heuristic, so the forward
+ * search keeps its open list across turns and takes up a state again when it finds its key has become stale.
+ * Whichever side is cheaper on a level does most of the work, so levels whose goals sit in corridors are mostly
+ * covered by the narrow backward search and open levels by the forward one. If the backward search runs out of
+ * states, the perimeter holds every solvable state, and forward states outside it are dropped as deadlocked.
+ * <p>
+ * Levels with more crates than goals have no single solved state, so they fall back to {@link Solver}. The
+ * transposition table and corral pruning settings are not used by the bidirectional search.
+ */
+public class BidirectionalSolver extends Solver {
+    //the budget of the first turn of each side, in expanded states
+    private static final long FIRST_BUDGET = 128;
+
+    @Override
+    public SolverResult solve(Map map) {
+        long start = System.nanoTime();
+        Board board = new Board(map);
+        if (!board.cratesMatchGoals())
+            return super.solve(map);
+
+        PlayerReach reach = new PlayerReach(board);
+        MatchingHeuristic heuristic = new MatchingHeuristic(board);
+        Node root = Solver.root(board, reach, heuristic);
+        if (root == null)
+            return result(SolverResult.Status.NO_SOLUTION, null, 0, 0, start);
+        if (board.isSolved(root.crates))
+            return result(SolverResult.Status.SOLVED, "", 0, 0, start);
+
+        Search search = new Search(board, reach, heuristic, start + getTimeLimit() * 1_000_000);
+        ArrayList<Node> layer = goalStates(board, reach);
+        for (Node n : layer) {
+            search.perimeter.put(n, n);
+        }
+        search.open.add(root);
+        int depth = 0;
+        for (long budget = FIRST_BUDGET; ; budget *= 2) {
+            while (!layer.isEmpty() && search.backwardExpanded < budget) {
+                layer = search.pullLayer(layer);
+                if (layer == null)
+                    return search.stopped(start);
+                depth++;
+            }
+            //the perimeter holds every state within depth pulls of a solved state, the last layer included; if
+            //that layer is empty, it holds every solvable state and the forward search needs no budget
+            boolean complete = layer.isEmpty();
+            search.outside = complete ? Board.UNREACHABLE : depth + 1;
+            SolverResult result = search.push(complete ? Long.MAX_VALUE : budget, start);
+            if (result != null)
+                return result;
+        }
+    }
+
+    /**
+     * The state of one search, shared by the turns of both sides
+     */
+    private final class Search {
+        final Board board;
+        final PlayerReach reach;
+        final MatchingHeuristic heuristic;
+        final long deadline;
+        final int[] moves;
+        //the states seen by the backward search, with g set to their pulls from a solved state
+        final HashMap<Node, Node> perimeter = new HashMap<>();
+        final PriorityQueue<Node> open = new PriorityQueue<>(ORDER);
+        final HashSet<Node> closed = new HashSet<>();
+        //the fewest pushes to go of states outside the perimeter, or Board.UNREACHABLE if they cannot be solved
+        int outside;
+        long forwardExpanded;
+        long backwardExpanded;
+        SolverResult.Status stopStatus;
+
+        Search(Board board, PlayerReach reach, MatchingHeuristic heuristic, long deadline) {
+            this.board = board;
+            this.reach = reach;
+            this.heuristic = heuristic;
+            this.deadline = deadline;
+            this.moves = new int[board.numCrates * 4];
+        }
+
+        /**
+         * Counts an expansion, unless a budget of the whole search has run out
+         *
+         * @return Whether the expansion may go ahead
+         */
+        boolean expand(boolean forward) {
+            long expanded = forwardExpanded + backwardExpanded;
+            if (expanded >= getNodeLimit())
+                stopStatus = SolverResult.Status.NODE_LIMIT;
+            else if ((expanded & 1023) == 0 && System.nanoTime() > deadline)
+                stopStatus = SolverResult.Status.TIME_LIMIT;
+            if (stopStatus != null)
+                return false;
+            if (forward)
+                forwardExpanded++;
+            else
+                backwardExpanded++;
+            return true;
+        }
+
+        SolverResult stopped(long start) {
+            return result(stopStatus, null, forwardExpanded, backwardExpanded, start);
+        }
+
+        /**
+         * Expands a whole backward layer, adding the states it reaches to the perimeter
+         *
+         * @return The next layer, or null if a budget of the whole search ran out
+         */
+        ArrayList<Node> pullLayer(ArrayList<Node> layer) {
+            ArrayList<Node> next = new ArrayList<>();
+            for (Node n : layer) {
+                if (!expand(false))
+                    return null;
+                int count = findPulls(board, reach, n, moves);
+                for (int i = 0; i < count; i++) {
+                    Node child = applyPull(board, reach, n, moves[i]);
+                    if (perimeter.putIfAbsent(child, child) == null)
+                        next.add(child);
+                }
+            }
+            return next;
+        }
+
+        /**
+         * Goes on with the forward A* search until it reaches the perimeter. States are guided again when taken
+         * from the open list, since the perimeter may have grown since they were added; a state whose heuristic
+         * rose goes back into the open list with its new key.
+         *
+         * @param budget The most states to expand in this turn
+         * @return The result of the whole search, or null if the turn ran out of budget
+         */
+        SolverResult push(long budget, long start) {
+            long turnExpanded = 0;
+            while (!open.isEmpty()) {
+                Node n = open.poll();
+                if (closed.contains(n))
+                    continue;
+                Node guided = guide(n, perimeter, outside);
+                if (guided == null)
+                    continue;
+                if (guided != n) {
+                    open.add(guided);
+                    continue;
+                }
+                Node meet = perimeter.get(n);
+                if (meet != null) {
+                    String solution = Solver.buildSolution(board, reach, joinPushes(board, n, meet));
+                    return result(SolverResult.Status.SOLVED, solution, forwardExpanded, backwardExpanded, start);
+                }
+                if (turnExpanded++ >= budget) {
+                    open.add(n);
+                    return null;
+                }
+                if (!expand(true))
+                    return stopped(start);
+                closed.add(n);
+
+                int count = Solver.findPushes(board, reach, n, moves);
+                for (int i = 0; i < count; i++) {
+                    Node child = Solver.applyPush(board, reach, heuristic, n, moves[i]);
+                    if (child == null || closed.contains(child))
+                        continue;
+                    child = guide(child, perimeter, outside);
+                    if (child != null)
+                        open.add(child);
+                }
+                n.matching = null;
+            }
+            return result(SolverResult.Status.NO_SOLUTION, null, forwardExpanded, backwardExpanded, start);
+        }
+    }
+
+    /**
+     * Raises the heuristic of a forward state with what the backward search knows about it
+     *
+     * @param outside The fewest pushes to go of states outside the perimeter, or {@link Board#UNREACHABLE} if they
+     *                cannot be solved
+     * @return The state itself if its heuristic is up to date, a copy with the heuristic raised, or null if it
+     * cannot be solved
+     */
+    private static Node guide(Node n, HashMap<Node, Node> perimeter, int outside) {
+        Node meet = perimeter.get(n);
+        int h = meet != null ? meet.g : outside;
+        if (h == Board.UNREACHABLE)
+            return null;
+        if (h <= n.h)
+            return n;
+        Node guided = new Node(n.crates, n.player, n.hash, n.parent, n.push, n.g, h);
+        guided.matching = n.matching;
+        return guided;
+    }
+
+    /**
+     * @return The solved states: every crate on a goal, and the player in each region of the free squares
+     */
+    private static ArrayList<Node> goalStates(Board board, PlayerReach reach) {
+        long[] crates = new long[board.initialCrates.length];
+        for (int g : board.goals) {
+            crates[g >>> 6] |= 1L << g;
+        }
+        long crateHash = Zobrist.hashCrates(crates);
+
+        boolean[] covered = new boolean[board.size];
+        ArrayList<Node> states = new ArrayList<>();
+        for (int pos = 0; pos < board.size; pos++) {
+            if (!board.floor[pos] || board.goal[pos] || covered[pos])
+                continue;
+            int player = reach.fill(crates, pos);
+            for (int x = pos; x < board.size; x++) {
+                if (reach.reached(x))
+                    covered[x] = true;
+            }
+            states.add(new Node(crates, player, crateHash ^ Zobrist.playerKey(player), null, -1, 0, 0));
+        }
+        return states;
+    }
+
+    /**
+     * Lists every pull the player can make from the state: the player stands next to a crate and steps away from
+     * it onto a free square, dragging the crate along
+     *
+     * @return The number of pulls written into out, encoded as (crate position before the pull << 2) | direction
+     * ordinal of the player step
+     */
+    private static int findPulls(Board board, PlayerReach reach, Node n, int[] out) {
+        reach.fill(n.crates, n.player);
+        int count = 0;
+        long[] crates = n.crates;
+        for (int i = 0; i < crates.length; i++) {
+            for (long w = crates[i]; w != 0; w &= w - 1) {
+                int c = (i << 6) + Long.numberOfTrailingZeros(w);
+                for (int d = 0; d < 4; d++) {
+                    int off = board.offsets[d];
+                    int p = c + off;
+                    int q = p + off;
+                    if (reach.reached(p) && reach.reached(q)) {
+                        out[count++] = (c << 2) | d;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return The state after the pull, with its player position normalized
+     */
+    private static Node applyPull(Board board, PlayerReach reach, Node n, int pull) {
+        int from = pull >>> 2;
+        int off = board.offsets[pull & 3];
+        int to = from + off;
+
+        long[] crates = n.crates.clone();
+        crates[from >>> 6] &= ~(1L << from);
+        crates[to >>> 6] |= 1L << to;
+        long crateHash = n.hash ^ Zobrist.playerKey(n.player) ^ Zobrist.crateKey(from) ^ Zobrist.crateKey(to);
+        int player = reach.fill(crates, to + off);
+        return new Node(crates, player, crateHash ^ Zobrist.playerKey(player), n, pull, n.g + 1, 0);
+    }
+
+    /**
+     * @param meetForward  The meeting state as reached by the forward search
+     * @param meetBackward The same state as reached by the backward search
+     * @return The pushes from the start to a solved state, encoded as in {@link Node#push}
+     */
+    private static List<Integer> joinPushes(Board board, Node meetForward, Node meetBackward) {
+        ArrayList<Integer> pushes = new ArrayList<>();
+        for (Node n = meetForward; n.parent != null; n = n.parent) {
+            pushes.add(0, n.push);
+        }
+        //a pull of the crate on c with the player stepping in direction d undoes a push of the crate on c + d
+        //in the opposite direction, whose ordinal is d ^ 1
+        for (Node n = meetBackward; n.parent != null; n = n.parent) {
+            int d = n.push & 3;
+            int to = (n.push >>> 2) + board.offsets[d];
+            pushes.add((to << 2) | (d ^ 1));
+        }
+        return pushes;
+    }
+
+    private static SolverResult result(SolverResult.Status status, String solution, long forward, long backward,
+                                       long start) {
+        return new SolverResult(status, solution, forward, backward, (System.nanoTime() - start) / 1_000_000);
+    }
+}
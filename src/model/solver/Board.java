@@ -0,0 +1,157 @@
+package model.solver;
+
+import model.Map.BitBoard;
+import model.Map.CorralDetector;
+import model.Map.Map;
+
+import java.util.Arrays;
+
+/**
+ * The static part of a level as seen by the solver: walls, goals and the number of pushes a lone crate needs to
+ * reach every goal from every square. The map is padded with a ring of walls so that the search never
+ * has to check bounds; a position is r * cols + c in padded coordinates.
+ */
+final class Board {
+    static final int UNREACHABLE = Integer.MAX_VALUE;
+    //indexed by Map.Direction ordinal: UP, DOWN, LEFT, RIGHT
+    static final char[] MOVE_CHARS = {'u', 'd', 'l', 'r'};
+    static final char[] PUSH_CHARS = {'U', 'D', 'L', 'R'};
+
+    final int rows;
+    final int cols;
+    final int size;
+    final int[] offsets = new int[4];
+
+    final boolean[] floor;
+    final boolean[] goal;
+    final int[] goals;
+    //goalDistances[i][pos] is the number of pushes a lone crate on pos needs to reach goals[i]
+    final int[][] goalDistances;
+    final int[] minPushes;
+
+    final long[] initialCrates;
+    final int initialPlayer;
+    final int numCrates;
+
+    /**
+     * @param map The map to take the level from. Only its current state is read.
+     */
+    Board(Map map) {
+        rows = map.getRows() + 2;
+        cols = map.getCols() + 2;
+        size = rows * cols;
+        for (Map.Direction d : Map.Direction.values()) {
+            offsets[d.ordinal()] = d.getDR() * cols + d.getDC();
+        }
+
+        floor = new boolean[size];
+        goal = new boolean[size];
+        initialCrates = new long[(size + 63) >>> 6];
+        int numGoals = 0;
+        int crateCount = 0;
+        for (int r = 0; r < map.getRows(); r++) {
+            for (int c = 0; c < map.getCols(); c++) {
+                int src = map.index(r, c);
+                int pos = toPos(r, c);
+                floor[pos] = !map.isWall(src);
+                if (map.isDest(src)) {
+                    goal[pos] = true;
+                    numGoals++;
+                }
+                if (map.hasCrate(src)) {
+                    initialCrates[pos >>> 6] |= 1L << pos;
+                    crateCount++;
+                }
+            }
+        }
+        initialPlayer = toPos(map.getPlayerR(), map.getPlayerC());
+        numCrates = crateCount;
+
+        goals = new int[numGoals];
+        for (int pos = 0, i = 0; pos < size; pos++) {
+            if (goal[pos])
+                goals[i++] = pos;
+        }
+        goalDistances = new int[numGoals][];
+        minPushes = computeMinPushes();
+    }
+
+    /**
+     * @param r The row in map coordinates
+     * @param c The column in map coordinates
+     * @return The padded position
+     */
+    int toPos(int r, int c) {
+        return (r + 1) * cols + (c + 1);
+    }
+
+    /**
+     * @return Whether the level can only be won with every crate on a goal, which is what makes the matching
+     * heuristic admissible and dead squares prunable
+     */
+    boolean cratesMatchGoals() {
+        return numCrates == goals.length;
+    }
+
+    /**
+     * @return A corral detector working in the padded coordinates of this board
+     */
+    CorralDetector newCorralDetector() {
+        long[] walls = BitBoard.create(size);
+        long[] goalBoard = BitBoard.create(size);
+        long[] dead = BitBoard.create(size);
+        for (int pos = 0; pos < size; pos++) {
+            if (!floor[pos])
+                BitBoard.set(walls, pos);
+            else if (minPushes[pos] == UNREACHABLE)
+                BitBoard.set(dead, pos);
+            if (goal[pos])
+                BitBoard.set(goalBoard, pos);
+        }
+        return new CorralDetector(rows, cols, walls, goalBoard, dead);
+    }
+
+    /**
+     * @param crates The crate bitboard
+     * @return Whether every goal holds a crate
+     */
+    boolean isSolved(long[] crates) {
+        for (int g : goals) {
+            if ((crates[g >>> 6] & (1L << g)) == 0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Runs a backward BFS from every goal, pulling a lone crate: a crate at x can come from y = x - d if both
+     * y and the player square y - d are floor. Fills {@link #goalDistances} on the way.
+     */
+    private int[] computeMinPushes() {
+        int[] best = new int[size];
+        Arrays.fill(best, UNREACHABLE);
+        int[] queue = new int[size];
+        for (int i = 0; i < goals.length; i++) {
+            int g = goals[i];
+            int[] dist = new int[size];
+            goalDistances[i] = dist;
+            Arrays.fill(dist, UNREACHABLE);
+            int head = 0;
+            int tail = 0;
+            dist[g] = 0;
+            queue[tail++] = g;
+            while (head < tail) {
+                int x = queue[head++];
+                best[x] = Math.min(best[x], dist[x]);
+                for (int off : offsets) {
+                    int y = x - off;
+                    if (floor[y] && floor[y - off] && dist[y] == UNREACHABLE) {
+                        dist[y] = dist[x] + 1;
+                        queue[tail++] = y;
+                    }
+                }
+            }
+        }
+        return best;
+    }
+}
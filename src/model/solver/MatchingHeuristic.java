@@ -0,0 +1,179 @@
+package model.solver;
+
+import java.util.Arrays;
+
+/**
+ * A lower bound on the pushes left: the cost of a minimum-cost perfect matching between crates and goals, where
+ * matching a crate to a goal costs the pushes a lone crate needs to get there. It dominates the sum of distances
+ * to the nearest goals, because no two crates may count the same goal, and a state whose crates cannot all be
+ * matched to reachable goals is recognized as deadlocked.
+ * <p>
+ * The first matching of a search is found with the Hungarian algorithm in O(n^3). A push only changes the costs
+ * of one crate, so a child reuses the dual potentials of its parent: the pushed crate is unmatched, its potential
+ * is lowered until the duals are feasible again, and a single augmenting path of the Hungarian algorithm, in
+ * O(n^2), restores an optimal matching. Instances hold scratch space and are not thread safe.
+ */
+final class MatchingHeuristic {
+    //cost of matching a crate to a goal it can never reach; any matching using it is a deadlock
+    private static final int NO_PATH = 1_000_000;
+
+    private final Board board;
+    private final int n;
+    //scratch space of an augmenting path search, indexed by goal (1-based, 0 is the virtual start column)
+    private final int[] minv;
+    private final int[] way;
+    private final boolean[] used;
+
+    /**
+     * The matching of one state. Arrays are 1-based as in the classic formulation of the algorithm.
+     */
+    static final class Matching {
+        //cratePos[i]: position of crate i; crateOf[j]: crate matched to goal j, or 0
+        final int[] cratePos;
+        final int[] crateOf;
+        final int[] u;
+        final int[] v;
+        int cost;
+
+        private Matching(int n) {
+            cratePos = new int[n + 1];
+            crateOf = new int[n + 1];
+            u = new int[n + 1];
+            v = new int[n + 1];
+        }
+
+        private Matching(Matching m) {
+            cratePos = m.cratePos.clone();
+            crateOf = m.crateOf.clone();
+            u = m.u.clone();
+            v = m.v.clone();
+        }
+
+        /**
+         * @return The number of pushes the matching needs, or {@link Board#UNREACHABLE} if some crate cannot reach
+         * any goal left for it
+         */
+        int lowerBound() {
+            return cost >= NO_PATH ? Board.UNREACHABLE : cost;
+        }
+    }
+
+    /**
+     * @param board A board with as many crates as goals
+     */
+    MatchingHeuristic(Board board) {
+        this.board = board;
+        this.n = board.goals.length;
+        minv = new int[n + 1];
+        way = new int[n + 1];
+        used = new boolean[n + 1];
+    }
+
+    /**
+     * @param crates The crate bitboard
+     * @return The optimal matching, computed from scratch
+     */
+    Matching match(long[] crates) {
+        Matching m = new Matching(n);
+        int i = 0;
+        for (int w = 0; w < crates.length; w++) {
+            for (long bits = crates[w]; bits != 0; bits &= bits - 1) {
+                m.cratePos[++i] = (w << 6) + Long.numberOfTrailingZeros(bits);
+            }
+        }
+        for (i = 1; i <= n; i++) {
+            augment(m, i);
+        }
+        m.cost = totalCost(m);
+        return m;
+    }
+
+    /**
+     * @param parent The matching of the state before the push
+     * @param from   The position of the pushed crate before the push
+     * @param to     The position of the pushed crate after the push
+     * @return The optimal matching of the state after the push
+     */
+    Matching afterPush(Matching parent, int from, int to) {
+        Matching m = new Matching(parent);
+        int i = 1;
+        while (m.cratePos[i] != from) {
+            i++;
+        }
+        m.cratePos[i] = to;
+        for (int j = 1; j <= n; j++) {
+            if (m.crateOf[j] == i) {
+                m.crateOf[j] = 0;
+                break;
+            }
+        }
+        int best = Integer.MAX_VALUE;
+        for (int j = 1; j <= n; j++) {
+            best = Math.min(best, cost(m, i, j) - m.v[j]);
+        }
+        m.u[i] = best;
+        augment(m, i);
+        m.cost = totalCost(m);
+        return m;
+    }
+
+    private int cost(Matching m, int crate, int goal) {
+        int d = board.goalDistances[goal - 1][m.cratePos[crate]];
+        return d == Board.UNREACHABLE ? NO_PATH : d;
+    }
+
+    private int totalCost(Matching m) {
+        int total = 0;
+        for (int j = 1; j <= n; j++) {
+            total += cost(m, m.crateOf[j], j);
+        }
+        return total;
+    }
+
+    /**
+     * One phase of the Hungarian algorithm: finds a shortest augmenting path from the unmatched crate i to a free
+     * goal over reduced costs, adjusting the potentials so that they stay feasible and tight on matched pairs.
+     */
+    private void augment(Matching m, int i) {
+        int[] crateOf = m.crateOf;
+        int[] u = m.u;
+        int[] v = m.v;
+        Arrays.fill(minv, Integer.MAX_VALUE);
+        Arrays.fill(used, false);
+        crateOf[0] = i;
+        int j0 = 0;
+        do {
+            used[j0] = true;
+            int i0 = crateOf[j0];
+            int delta = Integer.MAX_VALUE;
+            int j1 = 0;
+            for (int j = 1; j <= n; j++) {
+                if (used[j])
+                    continue;
+                int cur = cost(m, i0, j) - u[i0] - v[j];
+                if (cur < minv[j]) {
+                    minv[j] = cur;
+                    way[j] = j0;
+                }
+                if (minv[j] < delta) {
+                    delta = minv[j];
+                    j1 = j;
+                }
+            }
+            for (int j = 0; j <= n; j++) {
+                if (used[j]) {
+                    u[crateOf[j]] += delta;
+                    v[j] -= delta;
+                } else {
+                    minv[j] -= delta;
+                }
+            }
+            j0 = j1;
+        } while (crateOf[j0] != 0);
+        do {
+            int j1 = way[j0];
+            crateOf[j0] = crateOf[j1];
+            j0 = j1;
+        } while (j0 != 0);
+    }
+}
@@ -0,0 +1,51 @@
+package model.solver;
+
+import java.util.Arrays;
+
+/**
+ * A search state: the crate positions and the normalized player position, i.e. the top-left square of the region
+ * the player can walk to. Two nodes are equal when they describe the same state, regardless of how they were
+ * reached.
+ */
+final class Node {
+    final long[] crates;
+    final int player;
+    final long hash;
+
+    final Node parent;
+    //(crate position before the push << 2) | direction ordinal, or -1 for the root
+    final int push;
+    final int g;
+    final int h;
+    //only needed until the node is expanded, then dropped to save memory
+    MatchingHeuristic.Matching matching;
+
+    Node(long[] crates, int player, long hash, Node parent, int push, int g, int h) {
+        this.crates = crates;
+        this.player = player;
+        this.hash = hash;
+        this.parent = parent;
+        this.push = push;
+        this.g = g;
+        this.h = h;
+    }
+
+    int f() {
+        return g + h;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof Node))
+            return false;
+        Node n = (Node) o;
+        return hash == n.hash && player == n.player && Arrays.equals(crates, n.crates);
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (hash ^ (hash >>> 32));
+    }
+}
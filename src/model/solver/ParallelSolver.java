@@ -0,0 +1,225 @@
+package model.solver;
+
+import model.Map.Map;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A multi-core solver. It runs IDA* over the same push states as {@link Solver}, and splits the depth-first
+ * search of every iteration into tasks on a {@link ForkJoinPool}, so idle threads steal subtrees from busy ones.
+ * Threads share a {@link ConcurrentHashMap} of visited states with the fewest pushes each was reached with, and
+ * every thread stops once any of them finds a solution or a budget runs out. Every entry is tagged with the
+ * threshold of the iteration that wrote it, so an entry of an earlier iteration counts as absent and the map is
+ * reused across iterations. It holds at most {@link #MAX_VISITED} states: an iteration starting with a full map
+ * clears it, and once it fills up during an iteration, new states are searched without being recorded, which
+ * only costs duplicate work. A {@link TranspositionTable} can be set to keep the visited states off-heap instead.
+ * <p>
+ * Each iteration only allows states whose bound is within the threshold, and the threshold is raised to the
+ * smallest bound that was cut off, so the solution is push-optimal like the one of {@link Solver}.
+ */
+public class ParallelSolver extends Solver {
+    //keep forking while fewer tasks than this wait in the queue of the current worker
+    private static final int SURPLUS_TASKS = 3;
+    /**
+     * The most states kept in the visited map
+     */
+    public static final int MAX_VISITED = 1 << 20;
+
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @param parallelism The number of worker threads
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    @Override
+    public SolverResult solve(Map map) {
+        long start = System.nanoTime();
+        Board board = new Board(map);
+        PlayerReach rootReach = new PlayerReach(board);
+
+        MatchingHeuristic rootHeuristic = board.cratesMatchGoals() ? new MatchingHeuristic(board) : null;
+        Node root = Solver.root(board, rootReach, rootHeuristic);
+        if (root == null)
+            return result(SolverResult.Status.NO_SOLUTION, null, 0, start);
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            Search search = new Search(board, start + getTimeLimit() * 1_000_000, getNodeLimit(),
+                    getTranspositionTable());
+            for (int threshold = root.f(); ; ) {
+                search.startIteration(threshold);
+                pool.invoke(new SearchTask(search, root));
+
+                Node goal = search.solution.get();
+                if (goal != null)
+                    return result(SolverResult.Status.SOLVED, Solver.buildSolution(board, rootReach, goal),
+                            search.expanded.get(), start);
+                if (search.stopStatus != null)
+                    return result(search.stopStatus, null, search.expanded.get(), start);
+                if (search.nextThreshold.get() == Integer.MAX_VALUE)
+                    return result(SolverResult.Status.NO_SOLUTION, null, search.expanded.get(), start);
+                threshold = search.nextThreshold.get();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * The state shared by all tasks of a search
+     */
+    private static final class Search {
+        final Board board;
+        final long deadline;
+        final long nodeLimit;
+        final AtomicLong expanded = new AtomicLong();
+        final AtomicReference<Node> solution = new AtomicReference<>();
+        final ThreadLocal<PlayerReach> reach;
+        final ThreadLocal<MatchingHeuristic> heuristic;
+        final TranspositionTable tt;
+
+        int threshold;
+        AtomicInteger nextThreshold;
+        //(threshold of the iteration << 32) | fewest pushes the state was reached with in that iteration
+        final ConcurrentHashMap<Node, Long> visited = new ConcurrentHashMap<>();
+        volatile SolverResult.Status stopStatus;
+
+        Search(Board board, long deadline, long nodeLimit, TranspositionTable tt) {
+            this.board = board;
+            this.deadline = deadline;
+            this.nodeLimit = nodeLimit;
+            this.tt = tt;
+            reach = ThreadLocal.withInitial(() -> new PlayerReach(board));
+            heuristic = ThreadLocal.withInitial(() ->
+                    board.cratesMatchGoals() ? new MatchingHeuristic(board) : null);
+        }
+
+        void startIteration(int threshold) {
+            this.threshold = threshold;
+            nextThreshold = new AtomicInteger(Integer.MAX_VALUE);
+            if (tt != null)
+                tt.clear(board.initialCrates.length);
+            else if (visited.mappingCount() >= MAX_VISITED)
+                visited.clear();
+        }
+
+        boolean stopped() {
+            return stopStatus != null || solution.get() != null;
+        }
+
+        /**
+         * Records the state as reached with n.g pushes. A new state is not recorded once the map is full.
+         *
+         * @return Whether no thread has already reached it with as few pushes
+         */
+        boolean visit(Node n) {
+            if (tt != null)
+                return tt.visit(n.hash, n.crates, n.player, n.g);
+            long entry = ((long) threshold << 32) | n.g;
+            Long prev = visited.get(n);
+            if (prev == null) {
+                if (visited.mappingCount() >= MAX_VISITED)
+                    return true;
+                prev = visited.putIfAbsent(n, entry);
+            }
+            while (prev != null) {
+                if ((int) (prev >>> 32) == threshold && (int) (long) prev <= n.g)
+                    return false;
+                if (visited.replace(n, prev, entry))
+                    return true;
+                prev = visited.putIfAbsent(n, entry);
+            }
+            return true;
+        }
+
+        /**
+         * Counts an expansion and stops the search when a budget runs out
+         */
+        void countExpansion() {
+            long count = expanded.incrementAndGet();
+            if (count >= nodeLimit)
+                stopStatus = SolverResult.Status.NODE_LIMIT;
+            else if ((count & 1023) == 0 && System.nanoTime() > deadline)
+                stopStatus = SolverResult.Status.TIME_LIMIT;
+        }
+
+        /**
+         * Searches the subtree of the node, forking children as tasks while the worker has little queued work
+         *
+         * @param scratch The push buffers of the task, by depth below the node it started at
+         * @param depth   The depth of the node below the node the task started at
+         */
+        void dfs(Node n, int[][] scratch, int depth) {
+            if (stopped())
+                return;
+            if (n.f() > threshold) {
+                nextThreshold.accumulateAndGet(n.f(), Math::min);
+                return;
+            }
+            if (board.isSolved(n.crates)) {
+                solution.compareAndSet(null, n);
+                return;
+            }
+            if (!visit(n))
+                return;
+            countExpansion();
+
+            PlayerReach pr = reach.get();
+            MatchingHeuristic mh = heuristic.get();
+            if (scratch[depth] == null)
+                scratch[depth] = new int[board.numCrates * 4];
+            int[] pushes = scratch[depth];
+            int numPushes = Solver.findPushes(board, pr, n, pushes);
+            List<SearchTask> forked = new ArrayList<>();
+            for (int i = 0; i < numPushes; i++) {
+                Node child = Solver.applyPush(board, pr, mh, n, pushes[i]);
+                if (child == null)
+                    continue;
+                if (ForkJoinTask.getSurplusQueuedTaskCount() < SURPLUS_TASKS) {
+                    SearchTask t = new SearchTask(this, child);
+                    t.fork();
+                    forked.add(t);
+                } else {
+                    dfs(child, scratch, depth + 1);
+                }
+            }
+            //the root is searched again by every iteration, other nodes are generated anew
+            if (n.parent != null)
+                n.matching = null;
+            for (SearchTask t : forked) {
+                t.join();
+            }
+        }
+    }
+
+    private static final class SearchTask extends RecursiveAction {
+        private final Search search;
+        private final Node node;
+
+        SearchTask(Search search, Node node) {
+            this.search = search;
+            this.node = node;
+        }
+
+        @Override
+        protected void compute() {
+            //owned by the task, so subtrees a worker runs while joining never overwrite them
+            search.dfs(node, new int[Math.max(1, search.threshold - node.g + 1)][], 0);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package model.solver;
+
+import java.util.Arrays;
+
+/**
+ * Flood fills the squares the player can walk to without pushing a crate. Marks are stamped instead of cleared,
+ * so a fill costs only the size of the region. Instances are not thread safe.
+ */
+final class PlayerReach {
+    private final Board board;
+    private final int[] stamp;
+    private final int[] queue;
+    private final int[] from;
+    private int current;
+    private int topLeft;
+
+    PlayerReach(Board board) {
+        this.board = board;
+        stamp = new int[board.size];
+        queue = new int[board.size];
+        from = new int[board.size];
+    }
+
+    /**
+     * Fills the region of the player
+     *
+     * @param crates The crate bitboard, whose crates block the player
+     * @param start  The position of the player
+     * @return The top-left (smallest) position of the region, which identifies it
+     */
+    int fill(long[] crates, int start) {
+        if (++current == 0) {
+            Arrays.fill(stamp, 0);
+            current = 1;
+        }
+        int head = 0;
+        int tail = 0;
+        stamp[start] = current;
+        queue[tail++] = start;
+        topLeft = start;
+        while (head < tail) {
+            int x = queue[head++];
+            for (int off : board.offsets) {
+                int y = x + off;
+                if (stamp[y] != current && board.floor[y] && (crates[y >>> 6] & (1L << y)) == 0) {
+                    stamp[y] = current;
+                    from[y] = x;
+                    queue[tail++] = y;
+                    if (y < topLeft)
+                        topLeft = y;
+                }
+            }
+        }
+        return topLeft;
+    }
+
+    /**
+     * @param pos A position
+     * @return Whether the last {@link #fill(long[], int)} reached the position
+     */
+    boolean reached(int pos) {
+        return stamp[pos] == current;
+    }
+
+    /**
+     * Appends the moves of a shortest walk to the builder
+     *
+     * @param crates The crate bitboard
+     * @param start  The position of the player
+     * @param target The position to walk to, which must be reachable
+     * @param out    The builder receiving lowercase LURD moves
+     */
+    void appendPath(long[] crates, int start, int target, StringBuilder out) {
+        fill(crates, start);
+        int mark = out.length();
+        for (int x = target; x != start; x = from[x]) {
+            out.append(Board.MOVE_CHARS[direction(from[x], x)]);
+        }
+        out.replace(mark, out.length(), new StringBuilder(out.substring(mark)).reverse().toString());
+    }
+
+    private int direction(int a, int b) {
+        for (int d = 0; d < 4; d++) {
+            if (a + board.offsets[d] == b)
+                return d;
+        }
+        throw new IllegalStateException("Positions are not adjacent");
+    }
+}
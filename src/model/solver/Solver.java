@@ -0,0 +1,251 @@
+package model.solver;
+
+import model.GameLevel;
+import model.Map.CorralDetector;
+import model.Map.Map;
+import model.Map.Zobrist;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Finds push-optimal solutions with an A* search over push states. Each state is the set of crate positions plus
+ * the region the player stands in, so walking around without pushing is free and never expands a node. The
+ * heuristic is a minimum-cost matching of crates to goals over lone-crate push distances, see
+ * {@link MatchingHeuristic}. It is admissible, so the first solved state taken from the open list has the fewest
+ * pushes.
+ * <p>
+ * Only the model is used, so the solver can run in batch jobs without starting JavaFX.
+ */
+public class Solver {
+    public static final long DEFAULT_NODE_LIMIT = 2_000_000;
+    public static final long DEFAULT_TIME_LIMIT = 60_000;
+
+    //lowest f first; among equal f, prefer the state closer to the goal
+    static final Comparator<Node> ORDER = (a, b) -> a.f() != b.f() ? Integer.compare(a.f(), b.f())
+            : Integer.compare(a.h, b.h);
+
+    private long nodeLimit = DEFAULT_NODE_LIMIT;
+    private long timeLimit = DEFAULT_TIME_LIMIT;
+    private TranspositionTable transpositionTable;
+    private boolean corralPruning;
+
+    public long getNodeLimit() {
+        return nodeLimit;
+    }
+
+    /**
+     * @param nodeLimit The maximum number of states to expand before giving up
+     */
+    public void setNodeLimit(long nodeLimit) {
+        this.nodeLimit = nodeLimit;
+    }
+
+    public long getTimeLimit() {
+        return timeLimit;
+    }
+
+    /**
+     * @param timeLimit The maximum wall time of a search, in milliseconds
+     */
+    public void setTimeLimit(long timeLimit) {
+        this.timeLimit = timeLimit;
+    }
+
+    public TranspositionTable getTranspositionTable() {
+        return transpositionTable;
+    }
+
+    /**
+     * @param transpositionTable The table to record visited states in, instead of an on-heap set. It is cleared at
+     *                           the start of every search. Null to use the on-heap set.
+     */
+    public void setTranspositionTable(TranspositionTable transpositionTable) {
+        this.transpositionTable = transpositionTable;
+    }
+
+    public boolean isCorralPruning() {
+        return corralPruning;
+    }
+
+    /**
+     * @param corralPruning Whether to drop states with a corral deadlock, see {@link CorralDetector}. Each check
+     *                      costs a local search, so this pays off on levels with many crates and tight rooms.
+     */
+    public void setCorralPruning(boolean corralPruning) {
+        this.corralPruning = corralPruning;
+    }
+
+    /**
+     * @param level A loaded game level
+     * @return The result of solving the current state of its map
+     */
+    public SolverResult solve(GameLevel level) {
+        return solve(level.getMap());
+    }
+
+    /**
+     * Solves the map from its current state. The map itself is not modified.
+     *
+     * @param map The map to solve
+     * @return The result of the search
+     */
+    public SolverResult solve(Map map) {
+        long start = System.nanoTime();
+        Board board = new Board(map);
+        PlayerReach reach = new PlayerReach(board);
+
+        MatchingHeuristic heuristic = board.cratesMatchGoals() ? new MatchingHeuristic(board) : null;
+        Node root = root(board, reach, heuristic);
+        if (root == null)
+            return result(SolverResult.Status.NO_SOLUTION, null, 0, start);
+
+        PriorityQueue<Node> open = new PriorityQueue<>(ORDER);
+        HashSet<Node> closed = new HashSet<>();
+        TranspositionTable tt = transpositionTable;
+        if (tt != null)
+            tt.clear(board.initialCrates.length);
+        int[] pushes = new int[board.numCrates * 4];
+        CorralDetector corrals = corralPruning && board.cratesMatchGoals() ? board.newCorralDetector() : null;
+        long deadline = start + timeLimit * 1_000_000;
+        long expanded = 0;
+
+        open.add(root);
+        while (!open.isEmpty()) {
+            Node n = open.poll();
+            if (tt == null ? !closed.add(n) : !tt.visit(n.hash, n.crates, n.player, n.g))
+                continue;
+            if (board.isSolved(n.crates))
+                return result(SolverResult.Status.SOLVED, buildSolution(board, reach, n), expanded, start);
+            if (expanded >= nodeLimit)
+                return result(SolverResult.Status.NODE_LIMIT, null, expanded, start);
+            if ((expanded & 1023) == 0 && System.nanoTime() > deadline)
+                return result(SolverResult.Status.TIME_LIMIT, null, expanded, start);
+            expanded++;
+
+            int numPushes = findPushes(board, reach, n, pushes);
+            for (int i = 0; i < numPushes; i++) {
+                Node child = applyPush(board, reach, heuristic, n, pushes[i]);
+                if (child == null)
+                    continue;
+                boolean seen = tt == null ? closed.contains(child)
+                        : tt.get(child.hash, child.crates, child.player) != TranspositionTable.MISS;
+                if (!seen && (corrals == null || !corrals.isDeadlocked(child.crates, child.player)))
+                    open.add(child);
+            }
+            n.matching = null;
+        }
+        return result(SolverResult.Status.NO_SOLUTION, null, expanded, start);
+    }
+
+    /**
+     * Lists every push the player can make from the state, skipping pushes onto dead squares
+     *
+     * @return The number of pushes written into out, encoded as in {@link Node#push}
+     */
+    static int findPushes(Board board, PlayerReach reach, Node n, int[] out) {
+        reach.fill(n.crates, n.player);
+        int count = 0;
+        long[] crates = n.crates;
+        for (int i = 0; i < crates.length; i++) {
+            for (long w = crates[i]; w != 0; w &= w - 1) {
+                int c = (i << 6) + Long.numberOfTrailingZeros(w);
+                for (int d = 0; d < 4; d++) {
+                    int off = board.offsets[d];
+                    int t = c + off;
+                    if (board.floor[t] && (crates[t >>> 6] & (1L << t)) == 0 && reach.reached(c - off)
+                            && (!board.cratesMatchGoals() || board.minPushes[t] != Board.UNREACHABLE)) {
+                        out[count++] = (c << 2) | d;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @param heuristic The matching heuristic, or null if the crate and goal counts differ
+     * @return The start state, or null if it is already known to be deadlocked
+     */
+    static Node root(Board board, PlayerReach reach, MatchingHeuristic heuristic) {
+        if (board.numCrates < board.goals.length)
+            return null;
+        long[] crates = board.initialCrates.clone();
+        MatchingHeuristic.Matching matching = heuristic == null ? null : heuristic.match(crates);
+        int h = matching == null ? 0 : matching.lowerBound();
+        if (h == Board.UNREACHABLE)
+            return null;
+        int player = reach.fill(crates, board.initialPlayer);
+        Node root = new Node(crates, player, Zobrist.hashCrates(crates) ^ Zobrist.playerKey(player), null, -1, 0, h);
+        root.matching = matching;
+        return root;
+    }
+
+    /**
+     * @param heuristic The matching heuristic, or null if the crate and goal counts differ
+     * @return The state after the push, with its player position normalized, or null if the heuristic shows it is
+     * deadlocked
+     */
+    static Node applyPush(Board board, PlayerReach reach, MatchingHeuristic heuristic, Node n, int push) {
+        int from = push >>> 2;
+        int to = from + board.offsets[push & 3];
+        MatchingHeuristic.Matching matching = heuristic == null ? null : heuristic.afterPush(n.matching, from, to);
+        int h = matching == null ? 0 : matching.lowerBound();
+        if (h == Board.UNREACHABLE)
+            return null;
+
+        long[] crates = n.crates.clone();
+        crates[from >>> 6] &= ~(1L << from);
+        crates[to >>> 6] |= 1L << to;
+        long crateHash = n.hash ^ Zobrist.playerKey(n.player) ^ Zobrist.crateKey(from) ^ Zobrist.crateKey(to);
+        int player = reach.fill(crates, from);
+        Node child = new Node(crates, player, crateHash ^ Zobrist.playerKey(player), n, push, n.g + 1, h);
+        child.matching = matching;
+        return child;
+    }
+
+    /**
+     * Replays the pushes leading to the node from the real start position, adding the walks in between
+     *
+     * @return The solution in LURD notation
+     */
+    static String buildSolution(Board board, PlayerReach reach, Node goal) {
+        ArrayList<Integer> pushes = new ArrayList<>();
+        for (Node n = goal; n.parent != null; n = n.parent) {
+            pushes.add(n.push);
+        }
+        Collections.reverse(pushes);
+        return buildSolution(board, reach, pushes);
+    }
+
+    /**
+     * Replays pushes from the real start position, adding the walks in between
+     *
+     * @param pushes The pushes in order, encoded as in {@link Node#push}
+     * @return The solution in LURD notation
+     */
+    static String buildSolution(Board board, PlayerReach reach, List<Integer> pushes) {
+        StringBuilder sb = new StringBuilder();
+        long[] crates = board.initialCrates.clone();
+        int player = board.initialPlayer;
+        for (int push : pushes) {
+            int from = push >>> 2;
+            int d = push & 3;
+            int to = from + board.offsets[d];
+            reach.appendPath(crates, player, from - board.offsets[d], sb);
+            sb.append(Board.PUSH_CHARS[d]);
+            crates[from >>> 6] &= ~(1L << from);
+            crates[to >>> 6] |= 1L << to;
+            player = from;
+        }
+        return sb.toString();
+    }
+
+    static SolverResult result(SolverResult.Status status, String solution, long expanded, long start) {
+        return new SolverResult(status, solution, expanded, (System.nanoTime() - start) / 1_000_000);
+    }
+}
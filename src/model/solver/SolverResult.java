@@ -0,0 +1,131 @@
+package model.solver;
+
+/**
+ * The outcome of a solver run
+ */
+public class SolverResult {
+
+    public enum Status {
+        /**
+         * A solution was found
+         */
+        SOLVED,
+        /**
+         * The whole state space was searched without finding a solution
+         */
+        NO_SOLUTION,
+        /**
+         * The search stopped after expanding the maximum number of nodes
+         */
+        NODE_LIMIT,
+        /**
+         * The search stopped after running for the maximum time
+         */
+        TIME_LIMIT
+    }
+
+    private final Status status;
+    private final String solution;
+    private final long nodesExpanded;
+    private final long backwardNodesExpanded;
+    private final long elapsedMillis;
+
+    /**
+     * @param status        How the search ended
+     * @param solution      The solution in LURD notation, or null if none was found
+     * @param nodesExpanded The number of states expanded
+     * @param elapsedMillis The wall time of the search
+     */
+    public SolverResult(Status status, String solution, long nodesExpanded, long elapsedMillis) {
+        this(status, solution, nodesExpanded, 0, elapsedMillis);
+    }
+
+    /**
+     * @param status                How the search ended
+     * @param solution              The solution in LURD notation, or null if none was found
+     * @param forwardNodesExpanded  The number of states expanded by pushing from the start
+     * @param backwardNodesExpanded The number of states expanded by pulling from the goals
+     * @param elapsedMillis         The wall time of the search
+     */
+    public SolverResult(Status status, String solution, long forwardNodesExpanded, long backwardNodesExpanded,
+                        long elapsedMillis) {
+        this.status = status;
+        this.solution = solution;
+        this.nodesExpanded = forwardNodesExpanded + backwardNodesExpanded;
+        this.backwardNodesExpanded = backwardNodesExpanded;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * @return Whether a solution was found
+     */
+    public boolean isSolved() {
+        return status == Status.SOLVED;
+    }
+
+    /**
+     * @return The solution in LURD notation: lowercase letters are moves, uppercase letters are pushes. Null if the
+     * level was not solved.
+     */
+    public String getSolution() {
+        return solution;
+    }
+
+    /**
+     * @return The number of moves in the solution, including pushes, or -1 if the level was not solved
+     */
+    public int getMoves() {
+        return solution == null ? -1 : solution.length();
+    }
+
+    /**
+     * @return The number of pushes in the solution, or -1 if the level was not solved
+     */
+    public int getPushes() {
+        if (solution == null)
+            return -1;
+        int n = 0;
+        for (int i = 0; i < solution.length(); i++) {
+            if (Character.isUpperCase(solution.charAt(i)))
+                n++;
+        }
+        return n;
+    }
+
+    /**
+     * @return The number of states expanded in both directions
+     */
+    public long getNodesExpanded() {
+        return nodesExpanded;
+    }
+
+    /**
+     * @return The number of states expanded by pushing from the start
+     */
+    public long getForwardNodesExpanded() {
+        return nodesExpanded - backwardNodesExpanded;
+    }
+
+    /**
+     * @return The number of states expanded by pulling from the goals, 0 for a forward-only search
+     */
+    public long getBackwardNodesExpanded() {
+        return backwardNodesExpanded;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    @Override
+    public String toString() {
+        String nodes = backwardNodesExpanded == 0 ? "" + nodesExpanded
+                : nodesExpanded + " (forward=" + getForwardNodesExpanded() + " backward=" + backwardNodesExpanded + ")";
+        return status + " moves=" + getMoves() + " pushes=" + getPushes() + " nodes=" + nodes
+                + " time=" + elapsedMillis + "ms";
+    }
+}
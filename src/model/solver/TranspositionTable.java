@@ -0,0 +1,300 @@
+package model.solver;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed-size, open-addressing table of visited search states, stored off-heap in a direct or memory-mapped
+ * {@link ByteBuffer}, so that its size is known up front and it adds nothing for the garbage collector to trace.
+ * <p>
+ * Every entry holds the exact encoding of its state: the crate bitset and the normalized player position. The
+ * Zobrist hash only picks the slot; a lookup compares the whole encoding, so two different states are never
+ * confused. Each entry also stores the fewest pushes the state was reached with. The width of the crate bitset
+ * depends on the board, so it is set by {@link #clear(int)} at the start of every search.
+ * <p>
+ * Slots are grouped into sets of {@link #WAYS}; a state can only live in the set its hash selects. When the set is
+ * full the {@link ReplacementPolicy} decides which entry, if any, gives way. Sets are guarded by striped locks, so
+ * the table can be shared by the threads of a {@link ParallelSolver}.
+ */
+public class TranspositionTable {
+    /**
+     * Returned by {@link #get(long, long[], int)} when the state is not in the table
+     */
+    public static final int MISS = -1;
+    public static final int WAYS = 8;
+
+    //hash (8) + pushes (4) + generation (4) + player (4), followed by the crate bitset
+    private static final int HEADER_BYTES = 20;
+    private static final int STRIPES = 256;
+
+    public enum ReplacementPolicy {
+        /**
+         * Replace the oldest entry of the set, i.e. the slot written least recently
+         */
+        ALWAYS,
+        /**
+         * Replace the entry reached with the most pushes, and only if the new state was reached with fewer.
+         * States near the root guard the largest subtrees, so they are the most valuable to keep.
+         */
+        SHALLOWER,
+        /**
+         * Never replace; states that do not fit are not recorded
+         */
+        NEVER
+    }
+
+    private final ByteBuffer buffer;
+    private final ReplacementPolicy policy;
+    private final Object[] locks = new Object[STRIPES];
+    //set by clear(int) for the board being searched
+    private int crateWords = -1;
+    private int entryBytes;
+    private int numSets;
+    private byte[] nextVictim;
+    //entries whose generation differs from the current one are empty, which makes clear() O(1)
+    private int generation = 1;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder stores = new LongAdder();
+    private final LongAdder replacements = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+
+    /**
+     * Allocates the table in a direct buffer
+     *
+     * @param bytes  The size of the table in bytes; how many states it holds depends on the size of the board
+     * @param policy What to do when a new state finds its set full
+     */
+    public TranspositionTable(int bytes, ReplacementPolicy policy) {
+        this(ByteBuffer.allocateDirect(checkedBytes(bytes)), policy);
+    }
+
+    private TranspositionTable(ByteBuffer buffer, ReplacementPolicy policy) {
+        this.buffer = buffer;
+        this.policy = policy;
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Creates the table in a memory-mapped scratch file, for tables larger than the physical memory one wants to
+     * commit. The file is overwritten and its previous content ignored.
+     *
+     * @param file   The scratch file
+     * @param bytes  The size of the table in bytes; how many states it holds depends on the size of the board
+     * @param policy What to do when a new state finds its set full
+     * @return The new table
+     * @throws IOException If the file cannot be created or mapped
+     */
+    public static TranspositionTable mapped(Path file, int bytes, ReplacementPolicy policy) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ch.map(FileChannel.MapMode.READ_WRITE, 0, checkedBytes(bytes));
+            return new TranspositionTable(buffer, policy);
+        }
+    }
+
+    private static int checkedBytes(int bytes) {
+        if (bytes <= 0)
+            throw new IllegalArgumentException("Size must be positive: " + bytes);
+        return bytes;
+    }
+
+    /**
+     * Probes the table without counting a hit or miss; only {@link #visit(long, long[], int, int)} is counted
+     *
+     * @param hash   The Zobrist hash of the state
+     * @param crates The crate bitset of the state
+     * @param player The normalized player position of the state
+     * @return The fewest pushes the state was recorded with, or {@link #MISS}
+     */
+    public int get(long hash, long[] crates, int player) {
+        int set = setOf(hash);
+        synchronized (locks[set % STRIPES]) {
+            int slot = find(set, hash, crates, player);
+            return slot < 0 ? MISS : buffer.getInt(slot + 8);
+        }
+    }
+
+    /**
+     * Records that the state was reached with the given number of pushes
+     *
+     * @param hash   The Zobrist hash of the state
+     * @param crates The crate bitset of the state
+     * @param player The normalized player position of the state
+     * @param pushes The number of pushes the state was reached with
+     * @return False if the state was already recorded with at most as many pushes, i.e. it need not be searched
+     * again. True otherwise, whether or not the policy allowed it to be stored.
+     */
+    public boolean visit(long hash, long[] crates, int player, int pushes) {
+        int set = setOf(hash);
+        synchronized (locks[set % STRIPES]) {
+            int slot = find(set, hash, crates, player);
+            if (slot >= 0) {
+                hits.increment();
+                if (buffer.getInt(slot + 8) <= pushes)
+                    return false;
+                buffer.putInt(slot + 8, pushes);
+                return true;
+            }
+            misses.increment();
+
+            int base = set * WAYS * entryBytes;
+            int victim = -1;
+            for (int i = 0; i < WAYS; i++) {
+                int s = base + i * entryBytes;
+                if (buffer.getInt(s + 12) != generation) {
+                    victim = s;
+                    break;
+                }
+            }
+            if (victim < 0) {
+                victim = chooseVictim(set, base, pushes);
+                if (victim < 0) {
+                    rejections.increment();
+                    return true;
+                }
+                replacements.increment();
+            }
+            buffer.putLong(victim, hash);
+            buffer.putInt(victim + 8, pushes);
+            buffer.putInt(victim + 12, generation);
+            buffer.putInt(victim + 16, player);
+            for (int i = 0; i < crateWords; i++) {
+                buffer.putLong(victim + HEADER_BYTES + i * 8, crates[i]);
+            }
+            stores.increment();
+            return true;
+        }
+    }
+
+    private int chooseVictim(int set, int base, int pushes) {
+        switch (policy) {
+            case ALWAYS:
+                int way = nextVictim[set];
+                nextVictim[set] = (byte) ((way + 1) % WAYS);
+                return base + way * entryBytes;
+            case SHALLOWER:
+                int deepest = -1;
+                for (int i = 0; i < WAYS; i++) {
+                    int s = base + i * entryBytes;
+                    int p = buffer.getInt(s + 8);
+                    if (p > pushes && (deepest < 0 || p > buffer.getInt(deepest + 8)))
+                        deepest = s;
+                }
+                return deepest;
+            default:
+                return -1;
+        }
+    }
+
+    private int setOf(long hash) {
+        return (int) Long.remainderUnsigned(hash, numSets);
+    }
+
+    private int find(int set, long hash, long[] crates, int player) {
+        int base = set * WAYS * entryBytes;
+        for (int i = 0; i < WAYS; i++) {
+            int s = base + i * entryBytes;
+            if (buffer.getInt(s + 12) == generation && buffer.getLong(s) == hash && buffer.getInt(s + 16) == player
+                    && sameCrates(s, crates))
+                return s;
+        }
+        return -1;
+    }
+
+    private boolean sameCrates(int slot, long[] crates) {
+        for (int i = 0; i < crateWords; i++) {
+            if (buffer.getLong(slot + HEADER_BYTES + i * 8) != crates[i])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Empties the table in O(1), or in time linear in its size when the crate bitset changes width, since the
+     * entries are then laid out anew. Must not run concurrently with other calls.
+     *
+     * @param crateWords The number of longs in the crate bitsets of the board about to be searched
+     * @throws IllegalArgumentException when the table cannot hold even one set of such states
+     */
+    public void clear(int crateWords) {
+        if (crateWords != this.crateWords) {
+            int bytes = HEADER_BYTES + crateWords * 8;
+            int sets = buffer.capacity() / (bytes * WAYS);
+            if (sets == 0)
+                throw new IllegalArgumentException("Table of " + buffer.capacity() + " bytes too small for "
+                        + WAYS + " states of " + bytes + " bytes");
+            this.crateWords = crateWords;
+            entryBytes = bytes;
+            numSets = sets;
+            nextVictim = new byte[sets];
+            //whatever the old entries left where the new layout keeps generations must not pass for one
+            generation = 0;
+        }
+        if (++generation == 1 || generation == 0) {
+            for (int i = 0; i + HEADER_BYTES <= buffer.capacity(); i += entryBytes) {
+                buffer.putInt(i + 12, 0);
+            }
+            generation = 1;
+        }
+    }
+
+    /**
+     * @return The number of states the table can hold for the board of the last {@link #clear(int)}, 0 before it
+     */
+    public int getCapacity() {
+        return numSets * WAYS;
+    }
+
+    public ReplacementPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * @return The number of visits which found their state already recorded
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return The number of visits which did not find their state
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return The number of states written into a slot
+     */
+    public long getStores() {
+        return stores.sum();
+    }
+
+    /**
+     * @return The number of stores which evicted another state
+     */
+    public long getReplacements() {
+        return replacements.sum();
+    }
+
+    /**
+     * @return The number of states which were not stored because the policy kept the existing entries
+     */
+    public long getRejections() {
+        return rejections.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "capacity=" + getCapacity() + " hits=" + getHits() + " misses=" + getMisses() + " stores="
+                + getStores() + " replacements=" + getReplacements() + " rejections=" + getRejections();
+    }
+}
@@ -1,5 +1,7 @@
 package viewmodel;
 
+import java.nio.file.Paths;
+
 /**
  * Holds constants
  */
@@ -10,6 +12,14 @@ public class Config {
     public static final int LIST_CELL_HEIGHT = 30;
 
     public static final int LEVEL_EDITOR_TILE_SIZE = 32;
+    //the largest width and height of a level preview; larger maps are previewed with smaller tiles
+    public static final int PREVIEW_MAX_SIZE = 480;
+    //how many megabytes of level previews to keep in memory and on disk, and where to keep them on disk (empty for
+    //nowhere); set with -Dsokoban.thumbnails.memoryMb, -Dsokoban.thumbnails.diskMb and -Dsokoban.thumbnails.dir
+    public static final long THUMBNAIL_MEMORY_BYTES = Long.getLong("sokoban.thumbnails.memoryMb", 64) << 20;
+    public static final long THUMBNAIL_DISK_BYTES = Long.getLong("sokoban.thumbnails.diskMb", 256) << 20;
+    public static final String THUMBNAIL_DIRECTORY = System.getProperty("sokoban.thumbnails.dir",
+            Paths.get(System.getProperty("user.home"), ".sokoban", "thumbnails").toString());
     public static final String CSS_STYLES = Config.class.getResource("/assets/css/styles.css").toString();
 
     public static String getAboutText() {
@@ -17,7 +27,9 @@ public class Config {
                 "w: up\n" +
                 "a: left\n" +
                 "s: down\n" +
-                "d: right\n\n" +
+                "d: right\n" +
+                "u: undo\n" +
+                "r: redo\n\n" +
                 "Instructions:\n" +
                 "The objective of Sokoban is to push the all of the crates onto the destination tiles. This is done by moving the player next to a crate and pushing it.";
     }
@@ -246,6 +246,15 @@ public class LevelEditorCanvas extends Canvas {
         WALL("Wall", '#'),
         DEST("Destination", 'C');
 
+        //indexed by char, so that decoding a map cell is a single array load
+        private static final Brush[] BY_CHAR = new Brush[256];
+
+        static {
+            for (Brush b : values()) {
+                BY_CHAR[b.rep] = b;
+            }
+        }
+
         private final String text;
         private final char rep;
 
@@ -254,13 +263,12 @@ public class LevelEditorCanvas extends Canvas {
             this.rep = rep;
         }
 
+        /**
+         * @param c A char of a map file
+         * @return The brush the char stands for, or null if it stands for none
+         */
         public static Brush fromChar(char c) {
-            for (Brush b : Brush.values()) {
-                if (b.getRep() == c) {
-                    return b;
-                }
-            }
-            return null;
+            return c < BY_CHAR.length ? BY_CHAR[c] : null;
         }
 
         @Override
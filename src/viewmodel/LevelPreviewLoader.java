@@ -0,0 +1,107 @@
+package viewmodel;
+
+import javafx.application.Platform;
+import javafx.scene.image.Image;
+import javafx.scene.image.WritableImage;
+import model.Exceptions.InvalidMapException;
+import model.LevelCatalog;
+import model.LevelManager;
+import model.Map.Map;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Loads and renders level previews on a background thread. Every preview is rendered from its own {@link Map},
+ * so previewing a level never touches the current {@link model.GameLevel}.
+ * <p>
+ * Only the latest request matters: requesting a preview cancels the one still loading or rendering, and a
+ * cancelled preview is never shown.
+ * <p>
+ * Rendered previews are kept in a {@link ThumbnailCache}: a preview still in memory is shown right away, without
+ * a round trip through the background thread.
+ */
+public class LevelPreviewLoader {
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "level-preview");
+        thread.setDaemon(true); //so application exits when Platform.exit is called
+        return thread;
+    });
+    private final ThumbnailCache cache;
+    private Future<?> pending;
+    //identifies the latest request; only touched on the FX thread
+    private Object latest;
+
+    /**
+     * @param cache Where to keep rendered previews
+     */
+    public LevelPreviewLoader(ThumbnailCache cache) {
+        this.cache = cache;
+    }
+
+    public ThumbnailCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Starts loading the preview of a level, cancelling the previous request. Must be called on the FX thread.
+     *
+     * @param levelName The level to preview
+     * @param onReady   Called on the FX thread with the preview, or with null if the level is invalid. Called
+     *                  right away if the preview is cached in memory.
+     */
+    public void request(String levelName, Consumer<Image> onReady) {
+        cancel();
+        LevelCatalog.Entry entry = LevelManager.getInstance().getCatalogEntry(levelName);
+        //files which fail to parse have no hash, and nothing to cache
+        String key = entry == null || entry.getHash() == 0 ? null : ThumbnailCache.key(entry, levelName);
+        WritableImage cached = key == null ? null : cache.getFromMemory(key);
+        if (cached != null) {
+            onReady.accept(cached);
+            return;
+        }
+
+        Object request = new Object();
+        latest = request;
+        pending = executor.submit(() -> {
+            //the file may have changed since the catalog last saw it, in which case its key is stale
+            LevelCatalog catalog = LevelManager.getInstance().getCatalog();
+            boolean cacheable = key != null && catalog != null && catalog.isCurrent(entry);
+            WritableImage preview = cacheable ? cache.get(key) : null;
+            try {
+                if (preview == null) {
+                    Map map = LevelManager.getInstance().loadMap(levelName);
+                    preview = MapRenderer.renderPreview(map.getCells(), Config.PREVIEW_MAX_SIZE);
+                    if (preview == null)
+                        return;
+                    if (cacheable)
+                        cache.put(key, preview);
+                }
+            } catch (InvalidMapException e) {
+                //interrupting a read closes the file, which is not worth reporting
+                if (Thread.currentThread().isInterrupted())
+                    return;
+                e.printStackTrace();
+            }
+            Image result = preview;
+            Platform.runLater(() -> {
+                if (latest == request) {
+                    latest = null;
+                    onReady.accept(result);
+                }
+            });
+        });
+    }
+
+    /**
+     * Cancels the pending request, if any. Must be called on the FX thread.
+     */
+    public void cancel() {
+        if (pending != null)
+            pending.cancel(true);
+        pending = null;
+        latest = null;
+    }
+}
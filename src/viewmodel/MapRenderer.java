@@ -3,6 +3,8 @@ package viewmodel;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
 import model.Map.Cell;
 import model.Map.Map;
 import model.Map.Occupant.Crate;
@@ -11,6 +13,7 @@ import model.Map.Occupiable.DestTile;
 import model.Map.Occupiable.Occupiable;
 
 import java.net.URISyntaxException;
+import java.util.HashMap;
 
 import static viewmodel.Config.LEVEL_EDITOR_TILE_SIZE;
 
@@ -28,6 +31,9 @@ public class MapRenderer {
     private static Image dest = null;
     private static Image tile = null;
 
+    //the pixels of the images above, for rendering previews off the FX thread
+    private static final HashMap<Image, int[]> tilePixels = new HashMap<>();
+
     static {
         try {
             wall = new Image(MapRenderer.class.getResource("/assets/images/wall.png").toURI().toString());
@@ -90,7 +96,6 @@ public class MapRenderer {
      */
     public static void render(Canvas canvas, Cell[][] map) {
         //TODO
-        Image cellImage = null;
         var w = map[0].length*Config.LEVEL_EDITOR_TILE_SIZE;
         var h = map.length*Config.LEVEL_EDITOR_TILE_SIZE;
         canvas.setWidth(w);
@@ -98,34 +103,133 @@ public class MapRenderer {
         var gc = canvas.getGraphicsContext2D();
         for (int r=0; r<map.length; r++){
             for (int c=0; c<map[0].length; c++){
-                if (map[r][c] instanceof Occupiable) {
-                    Occupiable ocp = (Occupiable) map[r][c];
-                    if (ocp.getOccupant().isPresent()){
-                        if (ocp.getOccupant().get() instanceof Player){
-                            if (map[r][c] instanceof DestTile){
-                                cellImage = playerOnDest;
-                            } else {
-                                cellImage = playerOnTile;
-                            }
-                        } else {
-                            if (map[r][c] instanceof DestTile){
-                                cellImage = crateOnDest;
-                            } else {
-                                cellImage = crateOnTile;
-                            }
-                        }
-                    } else {
-                        if (map[r][c] instanceof DestTile){
-                            cellImage = dest;
-                        } else {
-                            cellImage = tile;
-                        }
+                gc.drawImage(imageOf(map[r][c]),c*Config.LEVEL_EDITOR_TILE_SIZE,r*Config.LEVEL_EDITOR_TILE_SIZE);
+            }
+        }
+    }
+
+    /**
+     * Repaints only some cells of a canvas the map was rendered onto with {@link #render(Canvas, Cell[][])}, e.g.
+     * the ones changed by a move (see {@link Map#takeChangedCells()}). The size of the canvas is not changed.
+     *
+     * @param canvas    The canvas the map was rendered onto
+     * @param map       The map holding the current state of the game
+     * @param positions The positions of the cells to repaint
+     */
+    public static void renderCells(Canvas canvas, Map map, int[] positions) {
+        var gc = canvas.getGraphicsContext2D();
+        for (int pos : positions) {
+            int r = pos / map.getCols();
+            int c = pos % map.getCols();
+            gc.drawImage(imageOf(map, pos), c * LEVEL_EDITOR_TILE_SIZE, r * LEVEL_EDITOR_TILE_SIZE);
+        }
+    }
+
+    /**
+     * Renders a preview of the map into a new image, with the tiles scaled down so that neither side of the image
+     * is larger than maxSize. Unlike rendering onto a canvas this does not touch the scene graph, so it can run on
+     * any thread. Rendering stops early if the thread is interrupted.
+     *
+     * @param map     The cells of the map
+     * @param maxSize The largest width and height of the image, in pixels
+     * @return The image, or null if the thread was interrupted
+     */
+    public static WritableImage renderPreview(Cell[][] map, int maxSize) {
+        int rows = map.length;
+        int cols = map[0].length;
+        if (Math.max(rows, cols) > maxSize)
+            return renderSampledPreview(map, maxSize);
+        int tileSize = Math.min(LEVEL_EDITOR_TILE_SIZE, maxSize / Math.max(rows, cols));
+        int w = cols * tileSize;
+        int[] pixels = new int[w * rows * tileSize];
+        for (int r = 0; r < rows; r++) {
+            if (Thread.currentThread().isInterrupted())
+                return null;
+            for (int c = 0; c < cols; c++) {
+                Image image = imageOf(map[r][c]);
+                int[] tile = pixelsOf(image);
+                int srcSize = (int) image.getWidth();
+                for (int y = 0; y < tileSize; y++) {
+                    int src = y * srcSize / tileSize * srcSize;
+                    int dst = (r * tileSize + y) * w + c * tileSize;
+                    for (int x = 0; x < tileSize; x++) {
+                        pixels[dst + x] = tile[src + x * srcSize / tileSize];
                     }
-                } else {
-                    cellImage = wall;
                 }
-                gc.drawImage(cellImage,c*Config.LEVEL_EDITOR_TILE_SIZE,r*Config.LEVEL_EDITOR_TILE_SIZE);
             }
         }
+        WritableImage preview = new WritableImage(w, rows * tileSize);
+        preview.getPixelWriter().setPixels(0, 0, w, rows * tileSize, PixelFormat.getIntArgbInstance(), pixels, 0, w);
+        return preview;
+    }
+
+    /**
+     * Renders a preview of a map with more rows or columns than pixels to spare, with every pixel showing the
+     * colour at the centre of the tile of the cell it falls on
+     */
+    private static WritableImage renderSampledPreview(Cell[][] map, int maxSize) {
+        int rows = map.length;
+        int cols = map[0].length;
+        int longest = Math.max(rows, cols);
+        int w = Math.max(1, cols * maxSize / longest);
+        int h = Math.max(1, rows * maxSize / longest);
+        int[] pixels = new int[w * h];
+        for (int y = 0; y < h; y++) {
+            if (Thread.currentThread().isInterrupted())
+                return null;
+            Cell[] row = map[y * rows / h];
+            for (int x = 0; x < w; x++) {
+                Image image = imageOf(row[x * cols / w]);
+                int srcSize = (int) image.getWidth();
+                pixels[y * w + x] = pixelsOf(image)[srcSize / 2 * srcSize + srcSize / 2];
+            }
+        }
+        WritableImage preview = new WritableImage(w, h);
+        preview.getPixelWriter().setPixels(0, 0, w, h, PixelFormat.getIntArgbInstance(), pixels, 0, w);
+        return preview;
+    }
+
+    /**
+     * @return The image of the cell in its current state
+     */
+    private static Image imageOf(Cell cell) {
+        if (!(cell instanceof Occupiable))
+            return wall;
+        Occupiable ocp = (Occupiable) cell;
+        boolean onDest = cell instanceof DestTile;
+        if (!ocp.getOccupant().isPresent())
+            return onDest ? dest : tile;
+        if (ocp.getOccupant().get() instanceof Player)
+            return onDest ? playerOnDest : playerOnTile;
+        return onDest ? crateOnDest : crateOnTile;
+    }
+
+    /**
+     * @return The image of a cell of the map in its current state
+     */
+    private static Image imageOf(Map map, int pos) {
+        if (map.isWall(pos))
+            return wall;
+        boolean onDest = map.isDest(pos);
+        if (map.hasCrate(pos))
+            return onDest ? crateOnDest : crateOnTile;
+        if (pos == map.getPlayerPos())
+            return onDest ? playerOnDest : playerOnTile;
+        return onDest ? dest : tile;
+    }
+
+    /**
+     * @return The ARGB pixels of a tile image, read once
+     */
+    private static synchronized int[] pixelsOf(Image image) {
+        int[] pixels = tilePixels.get(image);
+        if (pixels == null) {
+            int w = (int) image.getWidth();
+            int h = (int) image.getHeight();
+            pixels = new int[w * h];
+            image.getPixelReader().getPixels(0, 0, w, h, PixelFormat.getIntArgbInstance(), pixels, 0, w);
+            tilePixels.put(image, pixels);
+        }
+        return pixels;
     }
 }
@@ -0,0 +1,283 @@
+package viewmodel;
+
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import model.LevelCatalog;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Keeps rendered level previews, keyed by the content hash, size and modification time of the level file (see
+ * {@link LevelCatalog}), so a level whose file has not changed is never read or rendered twice.
+ * <p>
+ * Previews are kept in memory in least recently used order, up to a number of bytes of pixels. Every preview is
+ * also written to a compressed file in the cache directory, which outlives evictions and restarts. The directory is
+ * bounded too: once its previews take more than a number of bytes, the least recently used files are deleted
+ * until they take three quarters of it. All methods can be called from any thread.
+ */
+public class ThumbnailCache {
+    private static final int MAGIC = 0x534F4B54; //"SOKT"
+    private static final String SUFFIX = ".thumb";
+
+    private final long maxMemoryBytes;
+    private final Path directory;
+    private final long maxDiskBytes;
+    private final LinkedHashMap<String, WritableImage> images = new LinkedHashMap<>(16, 0.75f, true);
+    private long memoryBytes;
+    private final Object diskLock = new Object();
+    //the bytes of the previews in the directory, or -1 until it has been listed
+    private long diskBytes = -1;
+
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param maxMemoryBytes The most bytes of pixels to keep in memory
+     * @param directory      Where to write the compressed previews, or null to keep them in memory only
+     * @param maxDiskBytes   The most bytes of compressed previews to keep in the directory
+     */
+    public ThumbnailCache(long maxMemoryBytes, Path directory, long maxDiskBytes) {
+        this.maxMemoryBytes = maxMemoryBytes;
+        this.directory = directory;
+        this.maxDiskBytes = maxDiskBytes;
+    }
+
+    /**
+     * @param entry     The catalog entry of the level file
+     * @param levelName The level name, which tells the levels of a collection file apart
+     * @return The key of the preview of the level at the current preview size
+     */
+    public static String key(LevelCatalog.Entry entry, String levelName) {
+        int separator = levelName.lastIndexOf(':');
+        String level = separator == -1 ? "" : "-" + levelName.substring(separator + 1);
+        return String.format(Locale.ROOT, "%016x-%x-%x%s-%d", entry.getHash(), entry.getSize(), entry.getModified(),
+                level, Config.PREVIEW_MAX_SIZE);
+    }
+
+    /**
+     * Looks the preview up in memory only, which is cheap enough for the FX thread
+     *
+     * @return The preview, or null if it is not in memory
+     */
+    public synchronized WritableImage getFromMemory(String key) {
+        WritableImage image = images.get(key);
+        if (image != null)
+            memoryHits.incrementAndGet();
+        return image;
+    }
+
+    /**
+     * Looks the preview up in memory, then on disk. A preview found on disk is kept in memory again.
+     *
+     * @return The preview, or null if it was never stored
+     */
+    public WritableImage get(String key) {
+        WritableImage image = getFromMemory(key);
+        if (image != null)
+            return image;
+        image = readFromDisk(key);
+        if (image == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        diskHits.incrementAndGet();
+        putInMemory(key, image);
+        return image;
+    }
+
+    /**
+     * Stores a freshly rendered preview in memory and on disk
+     */
+    public void put(String key, WritableImage image) {
+        putInMemory(key, image);
+        if (directory == null)
+            return;
+        try {
+            writeToDisk(key, image);
+        } catch (IOException e) {
+            //the preview is still cached in memory, and rendered again next session; an interrupt while writing
+            //only means the preview is no longer wanted
+            if (!Thread.currentThread().isInterrupted())
+                e.printStackTrace();
+        }
+    }
+
+    private synchronized void putInMemory(String key, WritableImage image) {
+        WritableImage old = images.put(key, image);
+        if (old != null)
+            memoryBytes -= bytes(old);
+        memoryBytes += bytes(image);
+        Iterator<WritableImage> eldest = images.values().iterator();
+        while (memoryBytes > maxMemoryBytes && eldest.hasNext()) {
+            WritableImage evicted = eldest.next();
+            //never evict the preview just stored, even if it alone is over the limit
+            if (evicted == image)
+                break;
+            eldest.remove();
+            memoryBytes -= bytes(evicted);
+            evictions.incrementAndGet();
+        }
+    }
+
+    private static long bytes(WritableImage image) {
+        return (long) image.getWidth() * (long) image.getHeight() * 4;
+    }
+
+    private WritableImage readFromDisk(String key) {
+        if (directory == null)
+            return null;
+        Path file = directory.resolve(key + SUFFIX);
+        if (!Files.isRegularFile(file))
+            return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new InflaterInputStream(Files.newInputStream(file))))) {
+            //the modification time orders the files for trimming, so a file read is recently used
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            if (in.readInt() != MAGIC)
+                return null;
+            int w = in.readInt();
+            int h = in.readInt();
+            //previews are never larger than this, so anything else is a damaged file
+            if (w <= 0 || h <= 0 || w > Config.PREVIEW_MAX_SIZE || h > Config.PREVIEW_MAX_SIZE)
+                return null;
+            int[] pixels = new int[w * h];
+            for (int i = 0; i < pixels.length; i++) {
+                pixels[i] = in.readInt();
+            }
+            WritableImage image = new WritableImage(w, h);
+            image.getPixelWriter().setPixels(0, 0, w, h, PixelFormat.getIntArgbInstance(), pixels, 0, w);
+            return image;
+        } catch (IOException e) {
+            //a damaged file is rendered again and overwritten
+            return null;
+        }
+    }
+
+    /**
+     * Writes to a temporary file first and moves it into place, so a crash never leaves a partial preview
+     */
+    private void writeToDisk(String key, WritableImage image) throws IOException {
+        int w = (int) image.getWidth();
+        int h = (int) image.getHeight();
+        int[] pixels = new int[w * h];
+        image.getPixelReader().getPixels(0, 0, w, h, PixelFormat.getIntArgbInstance(), pixels, 0, w);
+
+        Files.createDirectories(directory);
+        Path tmp = Files.createTempFile(directory, key, ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new DeflaterOutputStream(Files.newOutputStream(tmp))))) {
+                out.writeInt(MAGIC);
+                out.writeInt(w);
+                out.writeInt(h);
+                for (int pixel : pixels) {
+                    out.writeInt(pixel);
+                }
+            }
+            Files.move(tmp, directory.resolve(key + SUFFIX), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        trimDisk(Files.size(directory.resolve(key + SUFFIX)));
+    }
+
+    /**
+     * Counts a file just written, and deletes the least recently used previews if the directory is over its limit.
+     * The directory is listed on the first write and whenever it is trimmed, which also corrects the count for
+     * files that were overwritten or deleted by another process.
+     */
+    private void trimDisk(long written) throws IOException {
+        synchronized (diskLock) {
+            if (diskBytes >= 0) {
+                diskBytes += written;
+                if (diskBytes <= maxDiskBytes)
+                    return;
+            }
+            List<Path> files;
+            try (Stream<Path> list = Files.list(directory)) {
+                files = list.filter(p -> p.getFileName().toString().endsWith(SUFFIX)).collect(Collectors.toList());
+            }
+            List<DiskFile> oldestFirst = new ArrayList<>();
+            diskBytes = 0;
+            for (Path file : files) {
+                try {
+                    DiskFile diskFile = new DiskFile(file, Files.size(file), Files.getLastModifiedTime(file));
+                    oldestFirst.add(diskFile);
+                    diskBytes += diskFile.size;
+                } catch (IOException e) {
+                    //deleted meanwhile
+                }
+            }
+            if (diskBytes <= maxDiskBytes)
+                return;
+            oldestFirst.sort(Comparator.comparing(f -> f.modified));
+            for (DiskFile file : oldestFirst) {
+                if (diskBytes <= maxDiskBytes / 4 * 3)
+                    break;
+                if (Files.deleteIfExists(file.path))
+                    diskBytes -= file.size;
+            }
+        }
+    }
+
+    public long getMemoryHits() {
+        return memoryHits.get();
+    }
+
+    public long getDiskHits() {
+        return diskHits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public synchronized long getMemoryBytes() {
+        return memoryBytes;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.ROOT, "ThumbnailCache{%d in memory (%.1f/%.1f MB), %d memory hits, %d disk hits, "
+                        + "%d misses, %d evictions}", images.size(), memoryBytes / (1024.0 * 1024.0),
+                maxMemoryBytes / (1024.0 * 1024.0), memoryHits.get(), diskHits.get(), misses.get(), evictions.get());
+    }
+
+    private static final class DiskFile {
+        final Path path;
+        final long size;
+        final FileTime modified;
+
+        DiskFile(Path path, long size, FileTime modified) {
+            this.path = path;
+            this.size = size;
+            this.modified = modified;
+        }
+    }
+}
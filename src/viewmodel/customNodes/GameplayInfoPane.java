@@ -17,6 +17,7 @@ public class GameplayInfoPane extends VBox {
     private final Label timerLabel = new Label();
     private final Label numMovesLabel = new Label();
     private final Label numRestartsLabel = new Label();
+    private final Label goalsLabel = new Label();
 
     /**
      * @param levelNameProperty   the StringProperty which holds the current level name
@@ -26,10 +27,16 @@ public class GameplayInfoPane extends VBox {
      *                            Sokoban character has made on the map
      * @param numRestartsProperty the IntegerProperty which tracks how many times the user
      *                            has restarted the current level
+     * @param numGoalsFilledProperty the IntegerProperty which holds the number of destinations with a crate on them
+     * @param numGoalsProperty    the IntegerProperty which holds the number of destinations of the map
      */
-    public GameplayInfoPane(StringProperty levelNameProperty, IntegerProperty timerProperty, IntegerProperty numMovesProperty, IntegerProperty numRestartsProperty) {
+    public GameplayInfoPane(StringProperty levelNameProperty, IntegerProperty timerProperty, IntegerProperty numMovesProperty, IntegerProperty numRestartsProperty,
+                            IntegerProperty numGoalsFilledProperty, IntegerProperty numGoalsProperty) {
         bindTo(levelNameProperty, timerProperty, numMovesProperty, numRestartsProperty);
-        this.getChildren().addAll(levelNameLabel, timerLabel, numMovesLabel, numRestartsLabel);
+        goalsLabel.textProperty().bind(Bindings.createStringBinding(
+                () -> "Goals filled: " + numGoalsFilledProperty.get() + "/" + numGoalsProperty.get(),
+                numGoalsFilledProperty, numGoalsProperty));
+        this.getChildren().addAll(levelNameLabel, timerLabel, numMovesLabel, numRestartsLabel, goalsLabel);
     }
 
     /**
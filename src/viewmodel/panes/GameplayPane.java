@@ -31,6 +31,8 @@ public class GameplayPane extends BorderPane {
     private HBox buttonBar;
     private Button restartButton;
     private Button quitToMenuButton;
+    //the map last rendered in full onto the canvas
+    private Map renderedMap;
 
     /**
      * Instantiate the member components and connect and style them. Also set the callbacks.
@@ -41,7 +43,9 @@ public class GameplayPane extends BorderPane {
         this.info = new GameplayInfoPane(LevelManager.getInstance().currentLevelNameProperty(),
                 LevelManager.getInstance().curGameLevelExistedDurationProperty(),
                 LevelManager.getInstance().getGameLevel().numPushesProperty(),
-                LevelManager.getInstance().curGameLevelNumRestartsProperty());
+                LevelManager.getInstance().curGameLevelNumRestartsProperty(),
+                LevelManager.getInstance().getGameLevel().numGoalsFilledProperty(),
+                LevelManager.getInstance().getGameLevel().numGoalsProperty());
         this.canvasContainer = new VBox();
         this.gamePlayCanvas = new Canvas();
         this.buttonBar = new HBox();
@@ -79,7 +83,7 @@ public class GameplayPane extends BorderPane {
     /**
      * Set the event handlers for the 2 buttons.
      * <p>
-     * Also listens for key presses (w, a, s, d), which move the character.
+     * Also listens for key presses (w, a, s, d), which move the character, and (u, r), which undo and redo moves.
      * <p>
      * Hint: {@link GameplayPane#setOnKeyPressed(EventHandler)}  is needed.
      * You will need to make the move, rerender the canvas, play the sound (if the move was made), and detect
@@ -94,22 +98,32 @@ public class GameplayPane extends BorderPane {
         this.setOnKeyPressed(e -> {
             if (e.getCode()== KeyCode.W) {
                 if (LevelManager.getInstance().getGameLevel().makeMove('w')) {
-                    renderCanvas();
+                    renderChangedCells();
                     AudioManager.getInstance().playMoveSound();
                 }
             } else if (e.getCode()== KeyCode.A) {
                 if (LevelManager.getInstance().getGameLevel().makeMove('a')){
-                    renderCanvas();
+                    renderChangedCells();
                     AudioManager.getInstance().playMoveSound();
                 }
             } else if (e.getCode()== KeyCode.S) {
                 if (LevelManager.getInstance().getGameLevel().makeMove('s')){
-                    renderCanvas();
+                    renderChangedCells();
                     AudioManager.getInstance().playMoveSound();
                 }
             } else if (e.getCode()== KeyCode.D) {
                 if (LevelManager.getInstance().getGameLevel().makeMove('d')){
-                    renderCanvas();
+                    renderChangedCells();
+                    AudioManager.getInstance().playMoveSound();
+                }
+            } else if (e.getCode()== KeyCode.U) {
+                if (LevelManager.getInstance().getGameLevel().undo()){
+                    renderChangedCells();
+                    AudioManager.getInstance().playMoveSound();
+                }
+            } else if (e.getCode()== KeyCode.R) {
+                if (LevelManager.getInstance().getGameLevel().redo()){
+                    renderChangedCells();
                     AudioManager.getInstance().playMoveSound();
                 }
             }
@@ -218,32 +232,40 @@ public class GameplayPane extends BorderPane {
     }
 
     /**
-     * Set the current level to the current level name, rerender the canvas, reset and start the timer, and
+     * Rewind the current level in memory, rerender the canvas, reset and start the timer, and
      * increment the number of restarts
      */
     private void doRestartAction() {
         //TODO
-        try {
-            LevelManager.getInstance().resetLevelTimer();
-            LevelManager.getInstance().incrementNumRestarts();
-            var numRestart = LevelManager.getInstance().curGameLevelNumRestartsProperty().get();
-            LevelManager.getInstance().setLevel(LevelManager.getInstance().currentLevelNameProperty().getValue());
-            LevelManager.getInstance().curGameLevelNumRestartsProperty().set(numRestart);
-            renderCanvas();
-            LevelManager.getInstance().startLevelTimer();
-        } catch (InvalidMapException e1) {
-            e1.printStackTrace();
-        }
+        LevelManager.getInstance().resetLevelTimer();
+        LevelManager.getInstance().incrementNumRestarts();
+        LevelManager.getInstance().restartLevel();
+        renderCanvas();
+        LevelManager.getInstance().startLevelTimer();
     }
 
     /**
-     * Render the canvas with updated data
+     * Render the whole canvas with updated data, when a level is loaded or restarted
      * <p>
      * Hint: {@link MapRenderer}
      */
     private void renderCanvas() {
         //TODO
-        var mapRenderer = new MapRenderer();
-        mapRenderer.render(gamePlayCanvas,LevelManager.getInstance().getGameLevel().getMap().getCells());
+        renderedMap = LevelManager.getInstance().getGameLevel().getMap();
+        renderedMap.takeChangedCells();
+        MapRenderer.render(gamePlayCanvas, renderedMap.getCells());
+    }
+
+    /**
+     * Repaint only the cells changed since the last render, which is at most three per move. Falls back to
+     * {@link #renderCanvas()} if another map was loaded meanwhile.
+     */
+    private void renderChangedCells() {
+        Map map = LevelManager.getInstance().getGameLevel().getMap();
+        if (map != renderedMap) {
+            renderCanvas();
+            return;
+        }
+        MapRenderer.renderCells(gamePlayCanvas, map, map.takeChangedCells());
     }
 }
@@ -4,18 +4,20 @@ import javafx.geometry.Pos;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.control.Button;
 import javafx.scene.control.ListView;
+import javafx.scene.image.Image;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.VBox;
 import javafx.stage.DirectoryChooser;
 import model.Exceptions.InvalidMapException;
 import model.LevelManager;
-import model.Map.Cell;
 import viewmodel.Config;
-import viewmodel.MapRenderer;
+import viewmodel.LevelPreviewLoader;
+import viewmodel.ThumbnailCache;
 import viewmodel.SceneManager;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Paths;
 
 /**
  * Represents the main menu in the game
@@ -28,6 +30,10 @@ public class LevelSelectPane extends BorderPane {
     private ListView<String> levelsListView;
     private VBox centerContainer;
     private Canvas levelPreview;
+    private final LevelPreviewLoader previewLoader = new LevelPreviewLoader(new ThumbnailCache(
+            Config.THUMBNAIL_MEMORY_BYTES,
+            Config.THUMBNAIL_DIRECTORY.isEmpty() ? null : Paths.get(Config.THUMBNAIL_DIRECTORY),
+            Config.THUMBNAIL_DISK_BYTES));
 
     /**
      * Instantiate the member components and connect and style them. Also set the callbacks.
@@ -84,8 +90,9 @@ public class LevelSelectPane extends BorderPane {
      * The chooseMapDir button should prompt the user to choose the map directory, and load the levels
      * The play button should set the current level based on the current level name (see LevelManager), show
      * the gameplay scene, and start the level timer.
-     * The listview, based on which item was clicked, should set the current level (see LevelManager), render the
-     * preview (see {@link MapRenderer#render(Canvas, Cell[][])}}, and set the play button to enabled.
+     * The listview, based on which item was clicked, should set the current level name (see LevelManager), request
+     * the preview (see {@link LevelPreviewLoader}), and set the play button to enabled. The level itself is only
+     * loaded when the play button is pressed.
      */
     private void setCallbacks() {
         //TODO
@@ -108,21 +115,30 @@ public class LevelSelectPane extends BorderPane {
             }
         });
         levelsListView.getSelectionModel().selectedItemProperty().addListener(e -> {
-            try {
-                playButton.setDisable(false);
-                if (LevelManager.getInstance().getLevelNames().size() > 0) {
-                    LevelManager.getInstance().setLevel(levelsListView.getSelectionModel().getSelectedItem());
-                    var mapRenderer = new MapRenderer();
-                    mapRenderer.render(levelPreview, LevelManager.getInstance().getGameLevel().getMap().getCells());
-                }
-            } catch (InvalidMapException e1) {
-                e1.printStackTrace();
-            } catch (NullPointerException e1){
-                e1.printStackTrace();
-            }
+            String levelName = levelsListView.getSelectionModel().getSelectedItem();
+            //the selection is cleared when the level names are reloaded from the watched map directory
+            if (levelName == null)
+                return;
+            playButton.setDisable(false);
+            LevelManager.getInstance().currentLevelNameProperty().set(levelName);
+            previewLoader.request(levelName, this::showPreview);
         });
     }
 
+    /**
+     * @param preview The rendered preview of the selected level, or null if the level is invalid
+     */
+    private void showPreview(Image preview) {
+        var gc = levelPreview.getGraphicsContext2D();
+        if (preview == null) {
+            gc.clearRect(0, 0, levelPreview.getWidth(), levelPreview.getHeight());
+            return;
+        }
+        levelPreview.setWidth(preview.getWidth());
+        levelPreview.setHeight(preview.getHeight());
+        gc.drawImage(preview, 0, 0);
+    }
+
 
     /**
      * Popup a DirectoryChooser window to ask the user where the map folder is stored.
@@ -138,6 +154,7 @@ public class LevelSelectPane extends BorderPane {
             var f = dc.showDialog(SceneManager.getInstance().getStage());
             if (f == null)
                 return;
+            previewLoader.cancel();
             LevelManager.getInstance().setMapDirectory(f.getPath());
             LevelManager.getInstance().loadLevelNamesFromDisk();
             levelsListView.setItems(LevelManager.getInstance().getLevelNames());